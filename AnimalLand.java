@@ -0,0 +1,85 @@
+/**
+ * This interface is the part of a Martian land that the animal rules read
+ * and change. MartianLand applies the changes directly, while a StripeLand
+ * keeps them aside so that stripes of the map can be worked on at once.
+ *
+ * @author Soma Hayasaka,hayasakas@student.unimelb.edu.au,1396301
+ *
+ */
+public interface AnimalLand {
+	/**
+	 * Gets the symbol at a cell.
+	 *
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @return Symbol at the cell, the boundary symbol if it lies off the map
+	 */
+	char getSymbol(int x, int y);
+
+	/**
+	 * Gets health at a position.
+	 *
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @return Health value, 0 if none
+	 */
+	int getHealth(int x, int y);
+
+	/**
+	 * Moves the entity at a position one step, leaving empty land behind.
+	 *
+	 * @param position  position of the entity
+	 * @param direction direction to move in
+	 */
+	void move(MartianLandPossision position, Direction direction);
+
+	/**
+	 * Moves the health at a position one step.
+	 *
+	 * @param posission position of the entity
+	 * @param direction direction to move in
+	 */
+	void moveHealth(MartianLandPossision posission, Direction direction);
+
+	/**
+	 * Adds health at a position.
+	 *
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @param v Health to add
+	 */
+	void addHealth(int x, int y, int v);
+
+	/**
+	 * Sets health at a position.
+	 *
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @param v Health value
+	 */
+	void putHealth(int x, int y, int v);
+
+	/**
+	 * Removes health at a position.
+	 *
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 */
+	void removeHealth(int x, int y);
+
+	/**
+	 * Rewrites the symbol at a cell.
+	 *
+	 * @param x      X coordinate
+	 * @param y      Y coordinate
+	 * @param symbol New symbol
+	 */
+	void rewriteMapChar(int x, int y, char symbol);
+
+	/**
+	 * Adds behaviour points.
+	 *
+	 * @param score Points to add
+	 */
+	void addBehaviorScore(int score);
+}
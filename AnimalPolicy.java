@@ -0,0 +1,96 @@
+/**
+ * This interface chooses where a Martian animal moves on each tick of an
+ * animal simulation. A policy only reads the land; the move itself is made
+ * by the simulation with the rules of the animal menu.
+ *
+ * @author Soma Hayasaka,hayasakas@student.unimelb.edu.au,1396301
+ *
+ */
+import java.util.SplittableRandom;
+import java.util.function.Predicate;
+
+import entities.Entitys;
+import entities.VegetableType;
+
+public interface AnimalPolicy {
+	/** Moves in a random direction */
+	AnimalPolicy RANDOM_WALK = (land, x, y, random) -> 1 + random.nextInt(8);
+	/** Moves onto a plant next to the animal, or else in a random direction */
+	AnimalPolicy SEEK_VEGETABLES = seek(entitys -> entitys.getEntity() instanceof VegetableType);
+	/** Moves onto a dog next to the animal, or else in a random direction */
+	AnimalPolicy SEEK_DOGS = seek(entitys -> entitys == Entitys.Dog);
+
+	/**
+	 * Chooses the direction of an animal.
+	 *
+	 * @param land   land the animal is on
+	 * @param x      X coordinate of the animal
+	 * @param y      Y coordinate of the animal
+	 * @param random random numbers of the simulation
+	 * @return Direction menu key from 1 to 8, 0 to stay
+	 */
+	int choose(AnimalLand land, int x, int y, SplittableRandom random);
+
+	/**
+	 * Creates a policy that moves onto a neighbouring cell holding a target,
+	 * picking one at random if there are several, or else in a random direction.
+	 *
+	 * @param target entities to move onto
+	 * @return New policy
+	 */
+	static AnimalPolicy seek(Predicate<Entitys> target) {
+		return (land, x, y, random) -> {
+			int found = 0;
+			int choice = 0;
+			for (int key = 1; key < Direction.STEP_X.length; key++) {
+				char symbol = land.getSymbol(x + Direction.STEP_X[key], y + Direction.STEP_Y[key]);
+				Entitys entitys = Entitys.fromSymbol(symbol);
+				// each target replaces the choice with falling odds, so all are equally likely
+				if (entitys != null && target.test(entitys) && random.nextInt(++found) == 0) {
+					choice = key;
+				}
+			}
+			return found > 0 ? choice : 1 + random.nextInt(8);
+		};
+	}
+
+	/**
+	 * Creates a policy that takes the first step towards the nearest target
+	 * of a distance field, or else moves in a random direction.
+	 * The field is only read, so when stripes move at once they all see the
+	 * field of the land as it was at the start of the half tick.
+	 *
+	 * @param field distances to the targets
+	 * @return New policy
+	 */
+	static AnimalPolicy follow(DistanceField field) {
+		return (land, x, y, random) -> {
+			int key = field.getStep(x, y);
+			return key > 0 ? key : 1 + random.nextInt(8);
+		};
+	}
+
+	/**
+	 * Gets a policy by name.
+	 *
+	 * @param name "random", "vegetables", "dogs", "nearest-vegetables" or "nearest-dogs"
+	 * @param land land the animals are on, for the distance fields
+	 * @return Policy, null if the name is unknown
+	 */
+	static AnimalPolicy forName(String name, MartianLand land) {
+		switch (name) {
+			case "nearest-vegetables":
+				return follow(land.getDistanceField(DistanceField.Target.VEGETABLE));
+			case "nearest-dogs":
+				return follow(land.getDistanceField(DistanceField.Target.DOG));
+			case "random":
+				return RANDOM_WALK;
+			case "vegetables":
+				return SEEK_VEGETABLES;
+			case "dogs":
+				return SEEK_DOGS;
+			default:
+				return null;
+		}
+	}
+}
@@ -0,0 +1,123 @@
+/**
+ * This class holds the rules of a Martian animal's move, so that the
+ * menus, the batch runner and the animal simulation all play by the same
+ * rules on any AnimalLand.
+ *
+ * @author Soma Hayasaka,hayasakas@student.unimelb.edu.au,1396301
+ *
+ */
+import entities.EarthAnimals;
+import entities.Entity;
+import entities.Entitys;
+import entities.VegetableType;
+
+public final class AnimalRules {
+
+	/** What came of a move */
+	public enum Outcome {
+		/** The animal could not move that way */
+		BLOCKED,
+		/** The animal walked onto empty land */
+		WALKED,
+		/** The animal ate a plant or killed cattle */
+		ATE,
+		/** The animal fought a dog and the dog died */
+		KILLED_DOG,
+		/** The animal fought a dog and the dog lived */
+		FOUGHT
+	}
+
+	private AnimalRules() {
+	}
+
+	/**
+	 * Moves a Martian animal one step.
+	 * Empty land is walked onto, plants and cattle are eaten for 2 health
+	 * and dogs are fought. Anything else stops the animal.
+	 *
+	 * @param land      land the animal is on
+	 * @param animal    position of the animal, not changed
+	 * @param direction direction to move in
+	 * @param report    true to print the fight with a dog
+	 * @return What came of the move
+	 */
+	public static Outcome step(AnimalLand land, MartianLandPossision animal, Direction direction, boolean report) {
+		int x = animal.get_x() + direction.get_x();
+		int y = animal.get_y() + direction.get_y();
+		char to_symbol = land.getSymbol(x, y);
+		if (to_symbol == Entitys.EMPTY) {
+			land.move(animal, direction);
+			land.moveHealth(animal, direction);
+			return Outcome.WALKED;
+		}
+		Entitys entitys = Entitys.fromSymbol(to_symbol);
+		Entity entity = entitys == null ? null : entitys.getEntity();
+		if (entitys == Entitys.Dog) {
+			return fight(land, animal, direction, report) ? Outcome.KILLED_DOG : Outcome.FOUGHT;
+		}
+		if (entity instanceof VegetableType || entity instanceof EarthAnimals) {
+			// plants are eaten and cattle are killed
+			land.move(animal, direction);
+			land.moveHealth(animal, direction);
+			land.addHealth(x, y, 2);
+			return Outcome.ATE;
+		}
+		return Outcome.BLOCKED;
+	}
+
+	/**
+	 * Resolves a fight between a Martian animal and the dog it moves onto.
+	 * The two take turns to deal 2 damage, the animal first. The winner's
+	 * health is kept at the dog's cell, and killing the animal is worth
+	 * 7 behaviour points.
+	 *
+	 * @param land      land the animal is on
+	 * @param animal    Position of the Martian animal
+	 * @param direction Direction of the dog from the animal
+	 * @param report    true to print every attack
+	 * @return true if the dog died, false if the animal died
+	 */
+	public static boolean fight(AnimalLand land, MartianLandPossision animal, Direction direction, boolean report) {
+		int x = animal.get_x() + direction.get_x();
+		int y = animal.get_y() + direction.get_y();
+		char dogSymbol = land.getSymbol(x, y);
+		int animalHealth = land.getHealth(animal.get_x(), animal.get_y());
+		int dogHealth = land.getHealth(x, y);
+		// the fight is played out on the two values read above; only the
+		// winner's health is put back, at the dog's cell, once it is over
+		land.removeHealth(animal.get_x(), animal.get_y());
+		land.removeHealth(x, y);
+		while (animalHealth > 0 && dogHealth > 0) {
+			dogHealth -= 2;
+			if (report) {
+				System.out
+						.println("Martian Animal attacked dog. Health of dog reduced by 2, Present Health: "
+								+ dogHealth);
+			}
+			if (dogHealth <= 0) {
+				if (report) {
+					System.out.println("Dog died");
+					System.out.println();
+				}
+				land.putHealth(x, y, animalHealth);
+				land.rewriteMapChar(x, y, '.');
+				return true;
+			}
+			animalHealth -= 2;
+			if (report) {
+				System.out.println(
+						"Dog attacked Martian Animal. Martian Animal's health reduced by 2, Present Health: "
+								+ animalHealth);
+			}
+			if (animalHealth <= 0) {
+				if (report) {
+					System.out.println("Martian Animal died");
+				}
+				land.putHealth(x, y, dogHealth);
+				land.rewriteMapChar(x, y, dogSymbol);
+				land.addBehaviorScore(7);
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,247 @@
+/**
+ * This class runs the Martian animals on their own, tick after tick.
+ * On each tick every Martian animal makes one move chosen by a policy,
+ * with the rules of the animal menu: plants and cattle are eaten for
+ * 2 health and dogs are fought until one of them dies. Nothing is printed
+ * while the simulation runs, and each tick is one step of the journal and
+ * the write-ahead log.
+ *
+ * Ticks can also be run in stripes of rows on several threads. The even
+ * stripes move first, each in a StripeLand, and their changes are made on
+ * the land in stripe order; then the odd stripes do the same. Each stripe
+ * has its own random numbers split from the seed, so the result depends
+ * on the seed and the stripe height, not on the number of threads.
+ *
+ * @author Soma Hayasaka,hayasakas@student.unimelb.edu.au,1396301
+ *
+ */
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+public class AnimalSimulation {
+	/** Seed used when none is given, so runs can be repeated */
+	public static final long DEFAULT_SEED = 1396301L;
+	/** Default number of rows in a stripe */
+	public static final int DEFAULT_STRIPE_ROWS = 64;
+
+	private final MartianLand martianland;
+	private final AnimalPolicy policy;
+	private final long seed;
+	/** Random numbers of the map order ticks */
+	private final SplittableRandom random;
+	/** Positions of the animals at the start of the tick */
+	private long[] positions = new long[0];
+	/** Number of moves of each outcome, indexed by ordinal */
+	private final long[] outcomes = new long[AnimalRules.Outcome.values().length];
+	/** Number of ticks run */
+	private long ticks = 0;
+
+	/** Number of threads for striped ticks, 0 to tick in map order */
+	private int threads = 0;
+	/** Number of rows in a stripe */
+	private int stripeRows = DEFAULT_STRIPE_ROWS;
+	/** Threads running the stripes, null if they run on the caller */
+	private ForkJoinPool pool = null;
+	/** Changes of each stripe, created with the first striped tick */
+	private StripeLand[] stripes = null;
+	/** Random numbers of each stripe */
+	private SplittableRandom[] stripeRandoms;
+	/** Outcomes of each stripe, added to the totals after each half tick */
+	private long[][] stripeOutcomes;
+	/** Index of the first animal of each stripe, and the animal count at the end */
+	private int[] stripeStarts;
+
+	/**
+	 * Creates a simulation with the default seed.
+	 *
+	 * @param martianland Martian land to run the animals on
+	 * @param policy      policy choosing the moves
+	 */
+	public AnimalSimulation(MartianLand martianland, AnimalPolicy policy) {
+		this(martianland, policy, DEFAULT_SEED);
+	}
+
+	/**
+	 * Creates a simulation.
+	 *
+	 * @param martianland Martian land to run the animals on
+	 * @param policy      policy choosing the moves
+	 * @param seed        seed of the random numbers
+	 */
+	public AnimalSimulation(MartianLand martianland, AnimalPolicy policy, long seed) {
+		this.martianland = martianland;
+		this.policy = policy;
+		this.seed = seed;
+		this.random = new SplittableRandom(seed);
+	}
+
+	/**
+	 * Runs ticks in stripes of rows.
+	 * The land is read by several threads at once, so its grid must not
+	 * change when read, which rules out a tiled grid.
+	 *
+	 * @param threads    number of threads, 0 to tick in map order on the caller
+	 * @param stripeRows number of rows in a stripe, at least 2
+	 */
+	public void setThreads(int threads, int stripeRows) {
+		close();
+		this.threads = Math.max(0, threads);
+		this.stripeRows = Math.max(2, stripeRows);
+		this.stripes = null;
+		if (this.threads > 1) {
+			pool = new ForkJoinPool(this.threads);
+		}
+	}
+
+	/**
+	 * Runs a number of ticks.
+	 *
+	 * @param count number of ticks to run
+	 */
+	public void run(long count) {
+		for (long i = 0; i < count; i++) {
+			tick();
+		}
+	}
+
+	/**
+	 * Moves every Martian animal once.
+	 * The positions are taken before the first move, so an animal that
+	 * moves further down the map is not moved again in the same tick.
+	 */
+	public void tick() {
+		int count = martianland.getMartianAnimalCount();
+		positions = martianland.copyAnimalPositions(positions);
+		if (threads == 0) {
+			for (int i = 0; i < count; i++) {
+				move(martianland, (int) positions[i], (int) (positions[i] >>> 32), random, outcomes);
+			}
+		} else {
+			tickInStripes(count);
+		}
+		martianland.endStep();
+		ticks++;
+	}
+
+	/**
+	 * Gets the number of ticks run.
+	 *
+	 * @return Number of ticks
+	 */
+	public long getTicks() {
+		return this.ticks;
+	}
+
+	/**
+	 * Gets the number of moves with an outcome.
+	 *
+	 * @param outcome outcome to count
+	 * @return Number of moves
+	 */
+	public long getCount(AnimalRules.Outcome outcome) {
+		return outcomes[outcome.ordinal()];
+	}
+
+	/**
+	 * Prints what the animals did.
+	 */
+	public void showSummary() {
+		System.out.println("Simulation finished.");
+		System.out.println("Ticks run: " + ticks);
+		System.out.println("Moves onto empty land: " + getCount(AnimalRules.Outcome.WALKED));
+		System.out.println("Plants and cattle eaten: " + getCount(AnimalRules.Outcome.ATE));
+		System.out.println("Fights with dogs: "
+				+ (getCount(AnimalRules.Outcome.FOUGHT) + getCount(AnimalRules.Outcome.KILLED_DOG))
+				+ ", dogs killed: " + getCount(AnimalRules.Outcome.KILLED_DOG));
+		System.out.println("Moves stopped: " + getCount(AnimalRules.Outcome.BLOCKED));
+		System.out.println("");
+	}
+
+	/**
+	 * Stops the threads of striped ticks.
+	 */
+	public void close() {
+		if (pool != null) {
+			pool.shutdown();
+			pool = null;
+		}
+	}
+
+	/**
+	 * Moves the animals of the even stripes and then of the odd stripes.
+	 *
+	 * @param count number of animals
+	 */
+	private void tickInStripes(int count) {
+		int stripeCount = (martianland.getHeight() + stripeRows - 1) / stripeRows;
+		if (stripes == null) {
+			stripes = new StripeLand[stripeCount];
+			stripeRandoms = new SplittableRandom[stripeCount];
+			stripeOutcomes = new long[stripeCount][outcomes.length];
+			stripeStarts = new int[stripeCount + 1];
+			SplittableRandom root = new SplittableRandom(seed);
+			for (int s = 0; s < stripeCount; s++) {
+				stripes[s] = new StripeLand(martianland);
+				stripeRandoms[s] = root.split();
+			}
+		}
+		// positions are sorted by row, so each stripe holds a run of them
+		int i = 0;
+		for (int s = 0; s < stripeCount; s++) {
+			stripeStarts[s] = i;
+			long end = (long) (s + 1) * stripeRows << 32;
+			while (i < count && positions[i] < end) {
+				i++;
+			}
+		}
+		stripeStarts[stripeCount] = count;
+
+		for (int parity = 0; parity < 2; parity++) {
+			final int first = parity;
+			IntStream half = IntStream.range(0, (stripeCount - first + 1) / 2).map(j -> 2 * j + first);
+			if (pool == null) {
+				half.forEach(this::moveStripe);
+			} else {
+				pool.submit(() -> half.parallel().forEach(this::moveStripe)).join();
+			}
+			for (int s = first; s < stripeCount; s += 2) {
+				stripes[s].commit();
+				for (int o = 0; o < outcomes.length; o++) {
+					outcomes[o] += stripeOutcomes[s][o];
+					stripeOutcomes[s][o] = 0;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Moves the animals of one stripe in its StripeLand.
+	 *
+	 * @param s index of the stripe
+	 */
+	private void moveStripe(int s) {
+		for (int i = stripeStarts[s]; i < stripeStarts[s + 1]; i++) {
+			move(stripes[s], (int) positions[i], (int) (positions[i] >>> 32), stripeRandoms[s], stripeOutcomes[s]);
+		}
+	}
+
+	/**
+	 * Moves one animal.
+	 *
+	 * @param land   land to move the animal on
+	 * @param x      X coordinate of the animal
+	 * @param y      Y coordinate of the animal
+	 * @param dice   random numbers for the policy
+	 * @param counts outcome counts to add to
+	 */
+	private void move(AnimalLand land, int x, int y, SplittableRandom dice, long[] counts) {
+		int key = policy.choose(land, x, y, dice);
+		if (key == 0) {
+			return;
+		}
+		AnimalRules.Outcome outcome = AnimalRules.step(land, new MartianLandPossision(x, y), new Direction(key),
+				false);
+		counts[outcome.ordinal()]++;
+	}
+}
@@ -0,0 +1,191 @@
+/**
+ * This class maps cells of the map to int values, such as a health, a
+ * symbol or an index. Positions are packed into long keys and kept in an
+ * open addressing table, so no coordinate or value is boxed.
+ *
+ * @author Soma Hayasaka,hayasakas@student.unimelb.edu.au,1396301
+ *
+ */
+import java.util.Arrays;
+
+public class CellMap {
+	/** Key marking an unused slot, no position packs to it */
+	private static final long FREE = -1L;
+	/** Table is grown once it is fuller than this */
+	private static final float LOAD_FACTOR = 0.5f;
+
+	/** Packed positions, FREE for unused slots */
+	private long[] keys;
+	/** Values, parallel to keys */
+	private int[] values;
+	/** Number of positions held */
+	private int size = 0;
+
+	/**
+	 * Creates an empty map.
+	 */
+	public CellMap() {
+		this(16);
+	}
+
+	/**
+	 * Creates an empty map sized for a number of positions.
+	 *
+	 * @param expected Number of positions expected
+	 */
+	public CellMap(int expected) {
+		int capacity = 16;
+		while (capacity * LOAD_FACTOR < expected) {
+			capacity <<= 1;
+		}
+		this.keys = new long[capacity];
+		this.values = new int[capacity];
+		Arrays.fill(this.keys, FREE);
+	}
+
+	/**
+	 * Gets the number of positions held.
+	 *
+	 * @return Number of positions
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Removes every position, keeping the table for reuse.
+	 */
+	public void clear() {
+		if (size > 0) {
+			Arrays.fill(keys, FREE);
+			size = 0;
+		}
+	}
+
+	/**
+	 * Checks if a position has a value.
+	 *
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @return true if a value is held, false otherwise
+	 */
+	public boolean contains(int x, int y) {
+		return keys[slot(PositionIndex.key(x, y))] != FREE;
+	}
+
+	/**
+	 * Gets the value at a position.
+	 *
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @return Value, 0 if no value is held
+	 */
+	public int get(int x, int y) {
+		int slot = slot(PositionIndex.key(x, y));
+		return keys[slot] == FREE ? 0 : values[slot];
+	}
+
+	/**
+	 * Sets the value at a position.
+	 *
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @param v Value
+	 */
+	public void put(int x, int y, int v) {
+		long key = PositionIndex.key(x, y);
+		int slot = slot(key);
+		if (keys[slot] == FREE) {
+			if (size + 1 > keys.length * LOAD_FACTOR) {
+				grow();
+				slot = slot(key);
+			}
+			keys[slot] = key;
+			size++;
+		}
+		values[slot] = v;
+	}
+
+	/**
+	 * Increases the value at a position.
+	 *
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @param v Amount to increase
+	 */
+	public void add(int x, int y, int v) {
+		put(x, y, get(x, y) + v);
+	}
+
+	/**
+	 * Removes the value at a position.
+	 *
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 */
+	public void remove(int x, int y) {
+		int slot = slot(PositionIndex.key(x, y));
+		if (keys[slot] == FREE) {
+			return;
+		}
+		// shift later entries of the probe run back so lookups stay correct
+		int mask = keys.length - 1;
+		int free = slot;
+		int next = (free + 1) & mask;
+		while (keys[next] != FREE) {
+			int home = hash(keys[next]) & mask;
+			if (((next - home) & mask) >= ((next - free) & mask)) {
+				keys[free] = keys[next];
+				values[free] = values[next];
+				free = next;
+			}
+			next = (next + 1) & mask;
+		}
+		keys[free] = FREE;
+		size--;
+	}
+
+	/**
+	 * Finds the slot holding a key, or the free slot where it belongs.
+	 *
+	 * @param key Packed position
+	 * @return Slot index
+	 */
+	private int slot(long key) {
+		int mask = keys.length - 1;
+		int slot = hash(key) & mask;
+		while (keys[slot] != FREE && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Doubles the table and reinserts every entry.
+	 */
+	private void grow() {
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		keys = new long[oldKeys.length * 2];
+		values = new int[oldValues.length * 2];
+		Arrays.fill(keys, FREE);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != FREE) {
+				int slot = slot(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+
+	/**
+	 * Spreads the bits of a packed position.
+	 *
+	 * @param key Packed position
+	 * @return Hash of the key
+	 */
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+}
@@ -6,6 +6,19 @@
  */
 public class Direction {
 
+	/** X distance of each menu key, from 0 for staying to 8 */
+	static final int[] STEP_X = new int[9];
+	/** Y distance of each menu key, from 0 for staying to 8 */
+	static final int[] STEP_Y = new int[9];
+
+	static {
+		for (int key = 0; key < STEP_X.length; key++) {
+			Direction direction = new Direction(key);
+			STEP_X[key] = direction.get_x();
+			STEP_Y[key] = direction.get_y();
+		}
+	}
+
 	private int xDistance = 0;
 	private int yDistance = 0;
 
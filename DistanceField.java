@@ -0,0 +1,411 @@
+/**
+ * This class keeps the number of steps from every cell of a Martian land
+ * to the nearest cell holding a kind of target, such as minerals for rovers
+ * or dogs for Martian animals. The field is filled once by a breadth-first
+ * search from all targets at once. After that, each changed cell is
+ * repaired on its own: distances that fall are spread outwards, and
+ * distances that lose the neighbour they were counted through are cleared
+ * and filled again from the cells around them. Only the cells whose
+ * distance changes are visited, so reading a distance never searches.
+ * The field holds 4 bytes for every cell of the map.
+ *
+ * @author Soma Hayasaka,hayasakas@student.unimelb.edu.au,1396301
+ *
+ */
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+import entities.Entitys;
+import entities.VegetableType;
+
+public class DistanceField {
+
+	/** Kinds of target a field can lead to */
+	public enum Target {
+		/** Minerals, for rovers */
+		MINERAL(PathFinder.Unit.ROVER, entitys -> entitys == Entitys.Mineral),
+		/** Rocks, for rovers */
+		ROCK(PathFinder.Unit.ROVER, entitys -> entitys == Entitys.Rock),
+		/** Rocks and minerals, for rovers harvesting both */
+		HARVEST(PathFinder.Unit.ROVER, entitys -> entitys == Entitys.Rock || entitys == Entitys.Mineral),
+		/** Vegetables, for Martian animals, which like robots only cross empty land */
+		VEGETABLE(PathFinder.Unit.ROBOT, entitys -> entitys.getEntity() instanceof VegetableType),
+		/** Dogs, for Martian animals */
+		DOG(PathFinder.Unit.ROBOT, entitys -> entitys == Entitys.Dog),
+		/** Space robots, for the land they can walk to */
+		ROBOT(PathFinder.Unit.ROBOT, entitys -> entitys == Entitys.SpaceRobot),
+		/** Martian animals, for the risk to what is planted near them */
+		MARTIAN_ANIMAL(PathFinder.Unit.ROBOT, entitys -> entitys == Entitys.Heebie || entitys == Entitys.Jeebie);
+
+		/** Unit whose steps are counted */
+		private final PathFinder.Unit unit;
+		/** Symbols that are targets */
+		private final boolean[] symbols = new boolean[128];
+
+		/**
+		 * Creates a kind of target.
+		 *
+		 * @param unit   unit whose steps are counted
+		 * @param target entities that are targets
+		 */
+		private Target(PathFinder.Unit unit, Predicate<Entitys> target) {
+			this.unit = unit;
+			for (Entitys entitys : Entitys.values()) {
+				if (target.test(entitys)) {
+					symbols[entitys.getSymbol()] = true;
+				}
+			}
+		}
+
+		/**
+		 * Checks if a symbol is a target.
+		 *
+		 * @param symbol symbol of the cell
+		 * @return true if the cell holds a target
+		 */
+		public boolean isTarget(char symbol) {
+			return symbol < symbols.length && symbols[symbol];
+		}
+
+		/**
+		 * Gets the unit whose steps are counted.
+		 *
+		 * @return Unit
+		 */
+		public PathFinder.Unit getUnit() {
+			return this.unit;
+		}
+	}
+
+	/** Distance of a cell that cannot reach a target */
+	private static final int UNREACHABLE = Integer.MAX_VALUE;
+
+	private final MartianGrid grid;
+	private final Target target;
+	private final int width;
+	private final int height;
+	/** Steps from each cell to the nearest target, row by row */
+	private final int[] distances;
+
+	/** Cells waiting to be visited by the current repair */
+	private int[] queue = new int[1 << 10];
+	/** Cells whose distance was cleared, as distance and cell packed together */
+	private long[] cleared = new long[1 << 10];
+
+	/** Number of cells repaired over all changes */
+	private long repaired = 0;
+
+	/**
+	 * Creates a field over a grid and fills it.
+	 *
+	 * @param grid   grid holding the map
+	 * @param target kind of target to lead to
+	 */
+	public DistanceField(MartianGrid grid, Target target) {
+		this.grid = grid;
+		this.target = target;
+		this.width = grid.getWidth();
+		this.height = grid.getHeight();
+		this.distances = new int[Math.multiplyExact(width, height)];
+		fill();
+	}
+
+	/**
+	 * Gets the kind of target the field leads to.
+	 *
+	 * @return Target
+	 */
+	public Target getTarget() {
+		return this.target;
+	}
+
+	/**
+	 * Gets the number of steps from a cell to the nearest target.
+	 * The cell itself may be held by the unit asking, so it only needs to be left.
+	 *
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @return Number of steps, 0 on a target, -1 if no target can be reached
+	 */
+	public int getDistance(int x, int y) {
+		if (!grid.contains(x, y)) {
+			return -1;
+		}
+		if (distances[y * width + x] == 0) {
+			return 0;
+		}
+		int best = nearest(x, y);
+		return best == UNREACHABLE ? -1 : best + 1;
+	}
+
+	/**
+	 * Gets the first step from a cell towards the nearest target.
+	 * On equal distances the lowest direction key is taken.
+	 *
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @return Direction menu key, 0 on a target or if no target can be reached
+	 */
+	public int getStep(int x, int y) {
+		if (!grid.contains(x, y) || distances[y * width + x] == 0) {
+			return 0;
+		}
+		int best = UNREACHABLE;
+		int step = 0;
+		for (int key = 1; key <= 8; key++) {
+			int d = distance(x + Direction.STEP_X[key], y + Direction.STEP_Y[key]);
+			if (d < best) {
+				best = d;
+				step = key;
+			}
+		}
+		return step;
+	}
+
+	/**
+	 * Gets the number of cells whose distance was changed by repairs.
+	 *
+	 * @return Number of cells
+	 */
+	public long getRepaired() {
+		return this.repaired;
+	}
+
+	/**
+	 * Repairs the field after the symbol of a cell has changed on the grid.
+	 * Must be called once for each changed cell, before the next cell is changed.
+	 *
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 */
+	public void update(int x, int y) {
+		int cell = y * width + x;
+		int now = settle(x, y);
+		int was = distances[cell];
+		if (now < was) {
+			distances[cell] = now;
+			repaired++;
+			queue[0] = cell;
+			spread(1);
+		} else if (now > was) {
+			clear(cell);
+		}
+	}
+
+	/**
+	 * Fills the whole field with a breadth-first search from every target.
+	 */
+	private void fill() {
+		Arrays.fill(distances, UNREACHABLE);
+		int tail = 0;
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				if (target.isTarget(grid.get(x, y))) {
+					distances[y * width + x] = 0;
+					tail = push(tail, y * width + x);
+				}
+			}
+		}
+		spread(tail);
+	}
+
+	/**
+	 * Clears the cells whose distance was counted through a cell whose
+	 * distance has risen, and fills them again from the cells around them.
+	 * Cells are cleared in order of distance, so a cell is only cleared once
+	 * every neighbour it could be counted through has been looked at.
+	 *
+	 * @param start cell whose distance has risen
+	 */
+	private void clear(int start) {
+		int count = 0;
+		int tail = 0;
+		cleared[count++] = start;
+		int was = distances[start];
+		distances[start] = UNREACHABLE;
+		tail = pushCountedThrough(tail, start, was);
+		for (int head = 0; head < tail; head++) {
+			int cell = queue[head];
+			int d = distances[cell];
+			if (d == UNREACHABLE || hasNeighbourAt(cell, d - 1)) {
+				continue;
+			}
+			if (count == cleared.length) {
+				cleared = Arrays.copyOf(cleared, count * 2);
+			}
+			cleared[count++] = cell;
+			distances[cell] = UNREACHABLE;
+			tail = pushCountedThrough(tail, cell, d);
+		}
+		repaired += count;
+
+		// each cleared cell starts again from its best neighbour that kept its distance
+		int seeds = 0;
+		for (int i = 0; i < count; i++) {
+			int cell = (int) cleared[i];
+			int d = settle(cell % width, cell / width);
+			if (d != UNREACHABLE) {
+				cleared[seeds++] = (long) d << 32 | cell;
+			}
+		}
+		Arrays.sort(cleared, 0, seeds);
+		int head = 0;
+		tail = 0;
+		int seed = 0;
+		while (seed < seeds || head < tail) {
+			int cell;
+			if (head == tail || (seed < seeds && (int) (cleared[seed] >>> 32) <= distances[queue[head]])) {
+				cell = (int) cleared[seed];
+				int d = (int) (cleared[seed++] >>> 32);
+				if (d >= distances[cell]) {
+					continue;
+				}
+				distances[cell] = d;
+			} else {
+				cell = queue[head++];
+			}
+			tail = relax(tail, cell);
+		}
+	}
+
+	/**
+	 * Spreads falling distances outwards from the cells in the queue,
+	 * which must be in order of distance.
+	 *
+	 * @param tail index after the last cell in the queue
+	 */
+	private void spread(int tail) {
+		for (int head = 0; head < tail;) {
+			tail = relax(tail, queue[head++]);
+		}
+	}
+
+	/**
+	 * Lowers the distance of the neighbours of a cell that can be reached
+	 * in fewer steps through it, queueing each one lowered.
+	 *
+	 * @param tail index after the last cell in the queue
+	 * @param cell cell whose distance is final
+	 * @return New index after the last cell in the queue
+	 */
+	private int relax(int tail, int cell) {
+		int x = cell % width;
+		int y = cell / width;
+		int next = distances[cell] + 1;
+		for (int key = 1; key <= 8; key++) {
+			int nx = x + Direction.STEP_X[key];
+			int ny = y + Direction.STEP_Y[key];
+			if (!grid.contains(nx, ny)) {
+				continue;
+			}
+			int neighbour = ny * width + nx;
+			if (next < distances[neighbour] && target.getUnit().canEnter(grid.get(nx, ny))) {
+				distances[neighbour] = next;
+				repaired++;
+				tail = push(tail, neighbour);
+			}
+		}
+		return tail;
+	}
+
+	/**
+	 * Queues the neighbours of a cell whose distance is one more than it was,
+	 * which may have been counted through it.
+	 *
+	 * @param tail index after the last cell in the queue
+	 * @param cell cell whose distance was cleared
+	 * @param was  distance of the cell before it was cleared
+	 * @return New index after the last cell in the queue
+	 */
+	private int pushCountedThrough(int tail, int cell, int was) {
+		int x = cell % width;
+		int y = cell / width;
+		for (int key = 1; key <= 8; key++) {
+			int nx = x + Direction.STEP_X[key];
+			int ny = y + Direction.STEP_Y[key];
+			if (grid.contains(nx, ny) && distances[ny * width + nx] == was + 1) {
+				tail = push(tail, ny * width + nx);
+			}
+		}
+		return tail;
+	}
+
+	/**
+	 * Checks if a cell has a neighbour at a distance.
+	 *
+	 * @param cell     cell to look around
+	 * @param distance distance to look for
+	 * @return true if a neighbour is that many steps from a target
+	 */
+	private boolean hasNeighbourAt(int cell, int distance) {
+		int x = cell % width;
+		int y = cell / width;
+		for (int key = 1; key <= 8; key++) {
+			if (distance(x + Direction.STEP_X[key], y + Direction.STEP_Y[key]) == distance) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Works out the distance of a cell from its symbol and its neighbours.
+	 *
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @return 0 on a target, one more than the nearest neighbour on a cell
+	 *         the unit can enter, UNREACHABLE otherwise
+	 */
+	private int settle(int x, int y) {
+		char symbol = grid.get(x, y);
+		if (target.isTarget(symbol)) {
+			return 0;
+		}
+		if (!target.getUnit().canEnter(symbol)) {
+			return UNREACHABLE;
+		}
+		int best = nearest(x, y);
+		return best == UNREACHABLE ? UNREACHABLE : best + 1;
+	}
+
+	/**
+	 * Gets the smallest distance of the neighbours of a cell.
+	 *
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @return Smallest distance, UNREACHABLE if none can reach a target
+	 */
+	private int nearest(int x, int y) {
+		int best = UNREACHABLE;
+		for (int key = 1; key <= 8; key++) {
+			best = Math.min(best, distance(x + Direction.STEP_X[key], y + Direction.STEP_Y[key]));
+		}
+		return best;
+	}
+
+	/**
+	 * Gets the distance held for a cell.
+	 *
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @return Distance, UNREACHABLE if off the map
+	 */
+	private int distance(int x, int y) {
+		return grid.contains(x, y) ? distances[y * width + x] : UNREACHABLE;
+	}
+
+	/**
+	 * Adds a cell to the end of the queue.
+	 *
+	 * @param tail index after the last cell in the queue
+	 * @param cell cell to add
+	 * @return New index after the last cell in the queue
+	 */
+	private int push(int tail, int cell) {
+		if (tail == queue.length) {
+			queue = Arrays.copyOf(queue, tail * 2);
+		}
+		queue[tail] = cell;
+		return tail + 1;
+	}
+}
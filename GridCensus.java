@@ -0,0 +1,127 @@
+/**
+ * This class counts and locates every entity in a range of grid rows.
+ * Large ranges are split in half and counted on the fork-join pool,
+ * then the partial results are merged back in row order.
+ *
+ * @author Soma Hayasaka,hayasakas@student.unimelb.edu.au,1396301
+ *
+ */
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import entities.Entitys;
+
+public class GridCensus extends RecursiveTask<GridCensus> {
+	/** A census is never serialized, a fork-join task is only Serializable by inheritance */
+	private static final long serialVersionUID = 1L;
+
+	/** Ranges with fewer cells than this are counted by one thread */
+	private static final int LEAF_CELLS = 1 << 20;
+
+	/** Grid to count */
+	private final MartianGrid grid;
+	/** First row of the range */
+	private final int fromY;
+	/** Row after the last row of the range */
+	private final int toY;
+
+	/** Number of cells holding each entity, indexed by ordinal */
+	private final int[] counts = new int[Entitys.values().length];
+	/** Positions of each entity, indexed by ordinal */
+	private final PositionIndex[] positions = new PositionIndex[Entitys.values().length];
+
+	/**
+	 * Creates a census of a range of rows.
+	 *
+	 * @param grid  Grid to count
+	 * @param fromY First row of the range
+	 * @param toY   Row after the last row of the range
+	 */
+	private GridCensus(MartianGrid grid, int fromY, int toY) {
+		this.grid = grid;
+		this.fromY = fromY;
+		this.toY = toY;
+		for (int i = 0; i < positions.length; i++) {
+			positions[i] = new PositionIndex();
+		}
+	}
+
+	/**
+	 * Counts and locates every entity in a grid.
+	 *
+	 * @param grid     Grid to count
+	 * @param parallel true to split the rows across the fork-join pool
+	 * @return Census of the whole grid
+	 */
+	public static GridCensus take(MartianGrid grid, boolean parallel) {
+		GridCensus census = new GridCensus(grid, 0, grid.getHeight());
+		if (parallel) {
+			return ForkJoinPool.commonPool().invoke(census);
+		}
+		census.countRows();
+		return census;
+	}
+
+	/**
+	 * Gets the number of cells holding an entity.
+	 *
+	 * @param entitys Entity to count
+	 * @return Number of cells holding the entity
+	 */
+	public int getCount(Entitys entitys) {
+		return counts[entitys.ordinal()];
+	}
+
+	/**
+	 * Gets the positions of an entity, ordered by row and then column.
+	 *
+	 * @param entitys Entity to look up
+	 * @return Position index of the entity
+	 */
+	public PositionIndex getPositions(Entitys entitys) {
+		return positions[entitys.ordinal()];
+	}
+
+	@Override
+	protected GridCensus compute() {
+		long cells = (long) (toY - fromY) * grid.getWidth();
+		if (cells <= LEAF_CELLS || toY - fromY < 2) {
+			countRows();
+			return this;
+		}
+		int middle = (fromY + toY) >>> 1;
+		GridCensus upper = new GridCensus(grid, fromY, middle);
+		GridCensus lower = new GridCensus(grid, middle, toY);
+		lower.fork();
+		upper.compute();
+		lower.join();
+		// upper rows come first, so appending keeps every index in order
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = upper.counts[i] + lower.counts[i];
+			positions[i] = upper.positions[i];
+			positions[i].addAll(lower.positions[i]);
+		}
+		return this;
+	}
+
+	/**
+	 * Counts and locates the entities in the range with this thread.
+	 */
+	private void countRows() {
+		// rows are copied out whole, a sparse grid fills empty segments in bulk
+		byte[] row = new byte[grid.getWidth()];
+		for (int y = fromY; y < toY; y++) {
+			grid.copyRow(y, row, 0);
+			for (int x = 0; x < row.length; x++) {
+				if (row[x] == Entitys.EMPTY) {
+					continue;
+				}
+				Entitys entitys = Entitys.fromSymbol((char) (row[x] & 0xff));
+				if (entitys != null) {
+					counts[entitys.ordinal()]++;
+					positions[entitys.ordinal()].add(x, y);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,290 @@
+/**
+ * This class stores the habitability status of every program run.
+ * Runs are kept as fixed-size binary records after a small header, so the
+ * position of run N is computed directly and any run or page of runs is
+ * read without scanning the runs before it. The snapshots taken every few
+ * moves of a run are kept in a second store of the same layout, so they
+ * never come between the runs.
+ *
+ * @author Soma Hayasaka,hayasakas@student.unimelb.edu.au,1396301
+ *
+ */
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import entities.Entitys;
+
+public class HabitabilityLog implements Closeable {
+	/** Extension added to the log file name for the binary store */
+	public static final String EXTENSION = ".dat";
+	/** Extension added to the log file name for the store of step snapshots */
+	public static final String STEP_EXTENSION = ".steps.dat";
+
+	/** "MHLG", marks a habitability log */
+	private static final int MAGIC = 0x4D484C47;
+	private static final int VERSION = 1;
+	/** Magic, version, number of entities per record */
+	private static final int HEADER_BYTES = 12;
+
+	private final FileChannel channel;
+	/** Number of entity counts in each record */
+	private final int entityCount;
+	/** Score followed by one count per entity */
+	private final int recordBytes;
+
+	/**
+	 * Opens a log store.
+	 *
+	 * @param channel     channel of the store
+	 * @param entityCount number of entity counts in each record
+	 */
+	private HabitabilityLog(FileChannel channel, int entityCount) {
+		this.channel = channel;
+		this.entityCount = entityCount;
+		this.recordBytes = 4 + 4 * entityCount;
+	}
+
+	/**
+	 * Opens the store of a habitability log.
+	 * A store that does not exist yet is created from the text log if there is one.
+	 *
+	 * @param logfile file name of the habitability log
+	 * @param create  true to create an empty store if there is no log at all
+	 * @return opened store
+	 * @throws FileNotFoundException if there is no log and create is false
+	 * @throws IOException           if IO error occurs
+	 */
+	public static HabitabilityLog open(String logfile, boolean create) throws FileNotFoundException, IOException {
+		File file = new File(logfile + EXTENSION);
+		File text = new File(logfile);
+		if (!file.exists() && !text.exists() && !create) {
+			throw new FileNotFoundException("File Not Found");
+		}
+		return open(file, text);
+	}
+
+	/**
+	 * Opens the store of the snapshots taken every few moves of a run, creating it if needed.
+	 *
+	 * @param logfile file name of the habitability log
+	 * @return opened store
+	 * @throws IOException if IO error occurs
+	 */
+	public static HabitabilityLog openSteps(String logfile) throws IOException {
+		return open(new File(logfile + STEP_EXTENSION), null);
+	}
+
+	/**
+	 * Opens a store, creating it if needed.
+	 *
+	 * @param file store to open
+	 * @param text text log to import into a new store, null if none
+	 * @return opened store
+	 * @throws IOException if IO error occurs
+	 */
+	private static HabitabilityLog open(File file, File text) throws IOException {
+		boolean fresh = !file.exists() || file.length() == 0;
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			HabitabilityLog log;
+			if (fresh) {
+				log = new HabitabilityLog(channel, Entitys.values().length);
+				ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+				header.putInt(MAGIC).putInt(VERSION).putInt(log.entityCount).flip();
+				writeFully(channel, header, 0);
+				if (text != null && text.exists()) {
+					log.importText(text);
+				}
+			} else {
+				ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+				readFully(channel, header, 0);
+				header.flip();
+				if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+					throw new IOException("Not a habitability log: " + file);
+				}
+				log = new HabitabilityLog(channel, header.getInt());
+			}
+			return log;
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Gets the number of runs in the log.
+	 *
+	 * @return Number of runs
+	 * @throws IOException if IO error occurs
+	 */
+	public int size() throws IOException {
+		return (int) ((channel.size() - HEADER_BYTES) / recordBytes);
+	}
+
+	/**
+	 * Gets the status of one run.
+	 *
+	 * @param run run number, counted from 1
+	 * @return Status recorded for the run
+	 * @throws IOException if IO error occurs
+	 */
+	public HabitabilitySnapshot get(int run) throws IOException {
+		return page(run, 1).get(0);
+	}
+
+	/**
+	 * Gets the status of a page of runs with one read.
+	 *
+	 * @param run   first run of the page, counted from 1
+	 * @param count number of runs in the page
+	 * @return Status recorded for each run, fewer if the log ends first
+	 * @throws IOException if IO error occurs
+	 */
+	public List<HabitabilitySnapshot> page(int run, int count) throws IOException {
+		int size = size();
+		if (run < 1 || run > size) {
+			throw new IndexOutOfBoundsException("No program run " + run);
+		}
+		count = Math.min(count, size - run + 1);
+		ByteBuffer buffer = ByteBuffer.allocate(count * recordBytes);
+		readFully(channel, buffer, HEADER_BYTES + (long) (run - 1) * recordBytes);
+		buffer.flip();
+
+		List<HabitabilitySnapshot> page = new ArrayList<>(count);
+		int[] counts = new int[Entitys.values().length];
+		for (int i = 0; i < count; i++) {
+			int score = buffer.getInt();
+			for (int e = 0; e < entityCount; e++) {
+				int value = buffer.getInt();
+				if (e < counts.length) {
+					counts[e] = value;
+				}
+			}
+			page.add(new HabitabilitySnapshot(score, counts));
+		}
+		return page;
+	}
+
+	/**
+	 * Adds the status of a run to the end of the log.
+	 *
+	 * @param snapshot status to record
+	 * @throws IOException if IO error occurs
+	 */
+	public void append(HabitabilitySnapshot snapshot) throws IOException {
+		append(List.of(snapshot));
+	}
+
+	/**
+	 * Adds the status of several runs to the end of the log with one write.
+	 *
+	 * @param snapshots statuses to record, in order
+	 * @throws IOException if IO error occurs
+	 */
+	public void append(List<HabitabilitySnapshot> snapshots) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(snapshots.size() * recordBytes);
+		Entitys[] entities = Entitys.values();
+		for (HabitabilitySnapshot snapshot : snapshots) {
+			buffer.putInt(snapshot.getScore());
+			for (int e = 0; e < entityCount; e++) {
+				buffer.putInt(e < entities.length ? snapshot.getCount(entities[e]) : 0);
+			}
+		}
+		buffer.flip();
+		writeFully(channel, buffer, HEADER_BYTES + (long) size() * recordBytes);
+	}
+
+	/**
+	 * Forces records written so far onto the disk.
+	 *
+	 * @throws IOException if IO error occurs
+	 */
+	public void sync() throws IOException {
+		channel.force(false);
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Imports the runs of a text habitability log.
+	 * Each run starts with ==START==, lists NAME=count lines and SCORE=score,
+	 * and ends with ==END==.
+	 *
+	 * @param text text log to import
+	 * @throws IOException if IO error occurs
+	 */
+	private void importText(File text) throws IOException {
+		Map<String, Entitys> names = new HashMap<>();
+		for (Entitys entitys : Entitys.values()) {
+			names.put(entitys.getName(), entitys);
+		}
+
+		List<HabitabilitySnapshot> runs = new ArrayList<>();
+		int[] counts = new int[Entitys.values().length];
+		int score = 0;
+		try (BufferedReader reader = new BufferedReader(new FileReader(text))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				if (line.contains("==START==")) {
+					counts = new int[Entitys.values().length];
+					score = 0;
+				} else if (line.contains("==END==")) {
+					runs.add(new HabitabilitySnapshot(score, counts));
+				} else if (line.startsWith("SCORE=")) {
+					score = parseCount(line.substring("SCORE=".length()));
+				} else if (line.indexOf('=') > 0) {
+					Entitys entitys = names.get(line.substring(0, line.indexOf('=')).trim());
+					if (entitys != null) {
+						counts[entitys.ordinal()] = parseCount(line.substring(line.indexOf('=') + 1));
+					}
+				}
+			}
+		}
+		append(runs);
+	}
+
+	/**
+	 * Parses a number from the text log.
+	 *
+	 * @param value text to parse
+	 * @return the number, 0 if it is not a number
+	 */
+	private static int parseCount(String value) {
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position + buffer.position());
+			if (read < 0) {
+				throw new IOException("Habitability log ended early");
+			}
+		}
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer, position + buffer.position());
+		}
+	}
+}
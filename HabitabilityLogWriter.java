@@ -0,0 +1,298 @@
+/**
+ * This class writes habitability snapshots to the habitability log on a
+ * background thread. Snapshots wait in a bounded queue and every snapshot
+ * waiting when the writer wakes up is written with one write, so recording
+ * a snapshot does not wait for the disk unless the queue is full. Snapshots
+ * taken every few moves go to the step store of the log, which is only
+ * created once the first of them is written.
+ *
+ * @author Soma Hayasaka,hayasakas@student.unimelb.edu.au,1396301
+ *
+ */
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class HabitabilityLogWriter implements Closeable {
+
+	/** When written snapshots are forced onto the disk */
+	public enum Sync {
+		/** Leave it to the operating system */
+		NEVER,
+		/** After every batch of snapshots */
+		EVERY_BATCH,
+		/** Once, when the writer is closed */
+		ON_CLOSE
+	}
+
+	/** Default number of snapshots that can wait in the queue */
+	public static final int DEFAULT_CAPACITY = 1024;
+	/** Default largest number of snapshots written at once */
+	public static final int DEFAULT_BATCH = 256;
+
+	/** Put in the queue by close() to stop the writer thread */
+	private static final HabitabilitySnapshot STOP = new HabitabilitySnapshot(0, new int[0]);
+
+	/** File name of the habitability log */
+	private final String logfile;
+	private final HabitabilityLog log;
+	/** Store of the step snapshots, opened by the writer thread when first needed */
+	private HabitabilityLog steps = null;
+	private final BlockingQueue<HabitabilitySnapshot> queue;
+	private final int batchSize;
+	private final Sync sync;
+	private final Thread worker;
+
+	private volatile boolean closed = false;
+	/** First error of the writer thread, thrown again by close() */
+	private volatile IOException failure = null;
+
+	/** Number of snapshots recorded */
+	private final AtomicLong submitted = new AtomicLong();
+	/** Number of snapshots written to the log */
+	private final AtomicLong written = new AtomicLong();
+	/** Number of snapshots lost because the log could not be written */
+	private final AtomicLong dropped = new AtomicLong();
+	/** Number of writes to the log */
+	private final AtomicLong batches = new AtomicLong();
+	/** Number of times record() waited for a full queue */
+	private final AtomicLong stalls = new AtomicLong();
+	/** Time record() spent waiting for a full queue, in nanoseconds */
+	private final AtomicLong stallNanos = new AtomicLong();
+	/** Most snapshots seen waiting in the queue */
+	private final AtomicLong maxDepth = new AtomicLong();
+
+	/**
+	 * Opens a writer with the default queue and batch sizes, forcing every batch.
+	 *
+	 * @param logfile file name of the habitability log
+	 * @throws IOException if the log cannot be opened
+	 */
+	public HabitabilityLogWriter(String logfile) throws IOException {
+		this(logfile, DEFAULT_CAPACITY, DEFAULT_BATCH, Sync.EVERY_BATCH);
+	}
+
+	/**
+	 * Opens a writer.
+	 *
+	 * @param logfile   file name of the habitability log
+	 * @param capacity  number of snapshots that can wait in the queue
+	 * @param batchSize largest number of snapshots written at once
+	 * @param sync      when written snapshots are forced onto the disk
+	 * @throws IOException if the log cannot be opened
+	 */
+	public HabitabilityLogWriter(String logfile, int capacity, int batchSize, Sync sync) throws IOException {
+		this.logfile = logfile;
+		this.log = HabitabilityLog.open(logfile, true);
+		this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+		this.batchSize = Math.max(1, batchSize);
+		this.sync = sync;
+		this.worker = new Thread(this::drain, "habitability-log");
+		this.worker.setDaemon(true);
+		this.worker.start();
+	}
+
+	/**
+	 * Records a snapshot. Waits only if the queue is full.
+	 *
+	 * @param snapshot snapshot to record
+	 */
+	public void record(HabitabilitySnapshot snapshot) {
+		if (closed) {
+			throw new IllegalStateException("Habitability log writer is closed");
+		}
+		submitted.incrementAndGet();
+		if (failure != null) {
+			dropped.incrementAndGet();
+			return;
+		}
+		if (!queue.offer(snapshot)) {
+			stalls.incrementAndGet();
+			long start = System.nanoTime();
+			try {
+				queue.put(snapshot);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				dropped.incrementAndGet();
+				return;
+			} finally {
+				stallNanos.addAndGet(System.nanoTime() - start);
+			}
+		}
+		maxDepth.accumulateAndGet(queue.size(), Math::max);
+	}
+
+	/**
+	 * Waits until every snapshot recorded so far is written.
+	 */
+	public synchronized void flush() {
+		while (pending() > 0 && worker.isAlive()) {
+			try {
+				wait(10);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Writes every waiting snapshot and closes the log.
+	 *
+	 * @throws IOException if a snapshot could not be written
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			queue.put(STOP);
+			worker.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		try {
+			if (sync == Sync.ON_CLOSE && failure == null) {
+				log.sync();
+				if (steps != null) {
+					steps.sync();
+				}
+			}
+		} finally {
+			try {
+				log.close();
+			} finally {
+				if (steps != null) {
+					steps.close();
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Gets the number of snapshots recorded but not written yet.
+	 *
+	 * @return Number of waiting snapshots
+	 */
+	public long pending() {
+		return submitted.get() - written.get() - dropped.get();
+	}
+
+	/**
+	 * Gets the number of snapshots written to the log.
+	 *
+	 * @return Number of written snapshots
+	 */
+	public long getWritten() {
+		return written.get();
+	}
+
+	/**
+	 * Gets the number of snapshots lost because the log could not be written.
+	 *
+	 * @return Number of lost snapshots
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * Gets the number of times record() waited for a full queue.
+	 *
+	 * @return Number of waits
+	 */
+	public long getStalls() {
+		return stalls.get();
+	}
+
+	/**
+	 * Prints how the writer kept up with the snapshots recorded.
+	 */
+	public void showStats() {
+		System.out.println("Habitability log snapshots: " + submitted.get() + " recorded, " + written.get()
+				+ " written in " + batches.get() + " batches, " + dropped.get() + " lost");
+		System.out.println("Habitability log queue: " + maxDepth.get() + " most waiting, " + stalls.get()
+				+ " full waits, " + stallNanos.get() / 1_000_000 + " ms waited");
+	}
+
+	/**
+	 * Loop of the writer thread, writing batches until close() is called.
+	 */
+	private void drain() {
+		List<HabitabilitySnapshot> batch = new ArrayList<>(batchSize);
+		boolean stop = false;
+		while (!stop) {
+			try {
+				batch.add(queue.take());
+			} catch (InterruptedException e) {
+				// only close() stops the writer, so that no snapshot is left behind
+				continue;
+			}
+			queue.drainTo(batch, batchSize - 1);
+			// nothing is recorded after close(), so STOP is always last
+			if (batch.get(batch.size() - 1) == STOP) {
+				batch.remove(batch.size() - 1);
+				stop = true;
+			}
+			if (!batch.isEmpty()) {
+				write(batch);
+				batch.clear();
+			}
+			synchronized (this) {
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Writes one batch of snapshots to the log, runs and steps to their own stores.
+	 *
+	 * @param batch snapshots to write, in order
+	 */
+	private void write(List<HabitabilitySnapshot> batch) {
+		if (failure != null) {
+			dropped.addAndGet(batch.size());
+			return;
+		}
+		List<HabitabilitySnapshot> runs = new ArrayList<>(batch.size());
+		List<HabitabilitySnapshot> moves = new ArrayList<>(batch.size());
+		for (HabitabilitySnapshot snapshot : batch) {
+			if (snapshot.isStep()) {
+				moves.add(snapshot);
+			} else {
+				runs.add(snapshot);
+			}
+		}
+		try {
+			if (!runs.isEmpty()) {
+				log.append(runs);
+			}
+			if (!moves.isEmpty()) {
+				if (steps == null) {
+					steps = HabitabilityLog.openSteps(logfile);
+				}
+				steps.append(moves);
+			}
+			if (sync == Sync.EVERY_BATCH) {
+				log.sync();
+				if (steps != null) {
+					steps.sync();
+				}
+			}
+			batches.incrementAndGet();
+			written.addAndGet(batch.size());
+		} catch (IOException e) {
+			failure = e;
+			dropped.addAndGet(batch.size());
+		}
+	}
+}
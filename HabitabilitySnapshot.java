@@ -0,0 +1,85 @@
+/**
+ * This class holds the habitability status of the map at one moment.
+ *
+ * @author Soma Hayasaka,hayasakas@student.unimelb.edu.au,1396301
+ *
+ */
+import java.util.Arrays;
+
+import entities.Entitys;
+
+public class HabitabilitySnapshot {
+	/** Total habitability score including the behaviour score */
+	private final int score;
+	/** Number of cells holding each entity, indexed by ordinal */
+	private final int[] counts;
+	/** true if taken during a run, false if taken at the end of one */
+	private final boolean step;
+
+	/**
+	 * Creates a snapshot of the end of a run.
+	 *
+	 * @param score  Total habitability score
+	 * @param counts Number of cells holding each entity, indexed by ordinal
+	 */
+	public HabitabilitySnapshot(int score, int[] counts) {
+		this(score, counts, false);
+	}
+
+	/**
+	 * Creates a snapshot.
+	 *
+	 * @param score  Total habitability score
+	 * @param counts Number of cells holding each entity, indexed by ordinal
+	 * @param step   true if taken during a run, false if taken at the end of one
+	 */
+	public HabitabilitySnapshot(int score, int[] counts, boolean step) {
+		this.score = score;
+		this.counts = Arrays.copyOf(counts, Entitys.values().length);
+		this.step = step;
+	}
+
+	/**
+	 * Gets the total habitability score.
+	 *
+	 * @return Total habitability score
+	 */
+	public int getScore() {
+		return this.score;
+	}
+
+	/**
+	 * Checks if the snapshot was taken during a run rather than at its end.
+	 *
+	 * @return true if taken every few moves of a run
+	 */
+	public boolean isStep() {
+		return this.step;
+	}
+
+	/**
+	 * Gets the number of cells holding an entity.
+	 *
+	 * @param entitys Entity to count
+	 * @return Number of cells holding the entity
+	 */
+	public int getCount(Entitys entitys) {
+		return this.counts[entitys.ordinal()];
+	}
+
+	/**
+	 * Prints the snapshot in the layout of the habitability log.
+	 */
+	public void show() {
+		System.out.println("Habitability Status");
+		System.out.println("======================");
+		for (Entitys entitys : MartianLand.STATUS_ORDER) {
+			int count = getCount(entitys);
+			if (count > 0) {
+				System.out.println(entitys.getName() + "=" + count);
+			}
+		}
+		System.out.println("");
+		System.out.println("Total Habitability Score: " + score);
+	}
+}
@@ -0,0 +1,444 @@
+/**
+ * This class plans where every space rover drives to harvest the rocks and
+ * minerals of a Martian land, as the rover menu scores them: 1 point for
+ * each rock and 2 for each mineral driven onto. The route of each rover is
+ * built one leg at a time, each leg going to the target that gives the
+ * most points per step, counting every target crossed on the way.
+ * A distance field to the nearest rock or mineral is kept as targets are
+ * taken, so a rover that has none nearby drives straight to the nearest
+ * one instead of searching, and a rover that can reach none stops at once.
+ *
+ * Legs are planned in rounds. In each round every rover looks for its next
+ * leg at once, over the map as it was at the start of the round, with the
+ * other rovers standing where they are. The legs are then taken in rover
+ * order; a leg that crosses a target taken by an earlier rover in the
+ * round, or the cell an earlier rover stopped on, is dropped and looked for
+ * again in the next round. Driving the legs one after another in the same
+ * order therefore never runs a rover into another, and the plan does not
+ * depend on the number of threads.
+ *
+ * @author Soma Hayasaka,hayasakas@student.unimelb.edu.au,1396301
+ *
+ */
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+import entities.Entitys;
+
+public class HarvestPlanner {
+	/** Largest number of steps to the nearest target for which the best leg is searched for */
+	private static final int SEARCH_STEPS = 8;
+
+	private final int width;
+	private final int height;
+	/** Copy of the map as the plan leaves it, with the rovers where the plan has taken them */
+	private final MartianGrid grid;
+	/** Steps from each cell of the copy to the nearest rock or mineral */
+	private final DistanceField field;
+	/** Cell of each rover, in rover menu order */
+	private final int[] rovers;
+	/** Cell of each rover before planning */
+	private final int[] starts;
+
+	/** Rover of each planned leg, in driving order */
+	private int[] legRovers = new int[64];
+	/** Direction menu keys of each planned leg */
+	private int[][] legs = new int[64][];
+	/** Number of planned legs */
+	private int legCount = 0;
+	/** Number of rounds run */
+	private int rounds = 0;
+	/** Points of all planned legs */
+	private long points = 0;
+	/** Steps of all planned legs */
+	private long steps = 0;
+
+	/** Number of parts the rovers are split into for each round */
+	private int parts = 1;
+	/** Threads looking for legs, null if they are looked for on the caller */
+	private ForkJoinPool pool = null;
+
+	/**
+	 * Reusable tables of one search, held by one part of the rovers.
+	 * Cells are marked with the number of the search that reached them,
+	 * so nothing has to be cleared between searches.
+	 */
+	private final class Search {
+		private final int[] seen = new int[width * height];
+		private final int[] depth = new int[width * height];
+		private final int[] gain = new int[width * height];
+		private final byte[] via = new byte[width * height];
+		private final int[] queue = new int[width * height];
+		private int mark = 0;
+	}
+
+	/**
+	 * Creates a planner over the rovers, rocks and minerals of a land.
+	 * The planner holds 5 bytes for every cell of the map, and 17 more
+	 * for each thread while planning.
+	 *
+	 * @param land Martian land to plan on, read only here
+	 */
+	public HarvestPlanner(MartianLand land) {
+		this.width = land.getWidth();
+		this.height = land.getHeight();
+		this.grid = new MartianGrid(width, height);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				grid.set(x, y, land.getSymbol(x, y));
+			}
+		}
+		this.field = new DistanceField(grid, DistanceField.Target.HARVEST);
+		PositionIndex index = land.getPositions(Entitys.SpaceRover);
+		this.rovers = new int[index.size()];
+		for (int i = 0; i < rovers.length; i++) {
+			rovers[i] = index.getY(i) * width + index.getX(i);
+		}
+		this.starts = rovers.clone();
+	}
+
+	/**
+	 * Looks for the legs of the rovers on several threads.
+	 *
+	 * @param threads number of threads, 1 or less to look on the caller
+	 */
+	public void setThreads(int threads) {
+		close();
+		this.parts = Math.max(1, threads);
+		if (parts > 1) {
+			pool = new ForkJoinPool(parts);
+		}
+	}
+
+	/**
+	 * Stops the threads looking for legs.
+	 */
+	public void close() {
+		if (pool != null) {
+			pool.shutdown();
+			pool = null;
+		}
+	}
+
+	/**
+	 * Plans legs until no rover can reach another target.
+	 * A rover that finds no target stops for the rest of the plan.
+	 */
+	public void plan() {
+		Search[] searches = new Search[Math.min(parts, Math.max(1, rovers.length))];
+		for (int i = 0; i < searches.length; i++) {
+			searches[i] = new Search();
+		}
+		int[][] found = new int[rovers.length][];
+		int[] foundGains = new int[rovers.length];
+		int[] active = new int[rovers.length];
+		int activeCount = rovers.length;
+		for (int i = 0; i < activeCount; i++) {
+			active[i] = i;
+		}
+		int[] moved = new int[rovers.length];
+
+		while (activeCount > 0) {
+			rounds++;
+			final int count = activeCount;
+			IntStream range = IntStream.range(0, searches.length);
+			IntConsumer look = part -> {
+				for (int i = part * count / searches.length; i < (part + 1) * count / searches.length; i++) {
+					int rover = active[i];
+					found[rover] = find(searches[part], rovers[rover], foundGains, rover);
+				}
+			};
+			if (pool == null) {
+				range.forEach(look);
+			} else {
+				pool.submit(() -> range.parallel().forEach(look)).join();
+			}
+
+			// take the legs in rover order, dropping those that clash with earlier ones
+			int movedCount = 0;
+			int kept = 0;
+			for (int i = 0; i < count; i++) {
+				int rover = active[i];
+				int[] leg = found[rover];
+				if (leg == null) {
+					continue;
+				}
+				active[kept++] = rover;
+				if (!isClear(rovers[rover], leg, foundGains[rover])) {
+					continue;
+				}
+				int cell = rovers[rover];
+				for (int step = 0; step < leg.length; step++) {
+					cell += Direction.STEP_Y[leg[step]] * width + Direction.STEP_X[leg[step]];
+					// the last cell goes straight to the rover, repairing the field once
+					rewrite(cell, step < leg.length - 1 ? Entitys.EMPTY : Entitys.SpaceRover.getSymbol());
+				}
+				moved[movedCount++] = rovers[rover];
+				rovers[rover] = cell;
+				addLeg(rover, leg);
+				points += foundGains[rover];
+				steps += leg.length;
+			}
+			for (int i = 0; i < movedCount; i++) {
+				rewrite(moved[i], Entitys.EMPTY);
+			}
+			activeCount = kept;
+		}
+	}
+
+	/**
+	 * Drives the rovers along the planned legs in order, scoring each rock
+	 * and mineral as the rover menu does. Each leg is one step of the journal.
+	 * A leg is cut short where the land no longer lets the rover through.
+	 *
+	 * @param land Martian land the plan was made on
+	 * @return Number of steps driven
+	 */
+	public long drive(MartianLand land) {
+		int[] at = starts.clone();
+		long driven = 0;
+		for (int i = 0; i < legCount; i++) {
+			int rover = legRovers[i];
+			MartianLandPossision position = new MartianLandPossision(at[rover] % width, at[rover] / width);
+			for (int key : legs[i]) {
+				Direction direction = new Direction(key);
+				char symbol = land.getSymbol(position.get_x() + direction.get_x(), position.get_y() + direction.get_y());
+				if (symbol != Entitys.EMPTY && symbol != Entitys.Rock.getSymbol()
+						&& symbol != Entitys.Mineral.getSymbol()) {
+					break;
+				}
+				land.move(position, direction);
+				if (symbol == Entitys.Rock.getSymbol()) {
+					land.addBehaviorScore(1);
+				} else if (symbol == Entitys.Mineral.getSymbol()) {
+					land.addBehaviorScore(2);
+				}
+				position.add(direction);
+				driven++;
+			}
+			at[rover] = position.get_y() * width + position.get_x();
+			land.endStep();
+		}
+		return driven;
+	}
+
+	/**
+	 * Prints what the plan does.
+	 */
+	public void showSummary() {
+		System.out.println("Harvest planned.");
+		System.out.println("Rovers: " + rovers.length + ", rounds: " + rounds + ", legs: " + legCount);
+		System.out.println("Steps: " + steps + ", points: " + points);
+		if (steps > 0) {
+			System.out.println(String.format("Points per step: %.3f", (double) points / steps));
+		}
+		System.out.println("");
+	}
+
+	/**
+	 * Gets the number of planned legs.
+	 *
+	 * @return Number of legs
+	 */
+	public int getLegCount() {
+		return this.legCount;
+	}
+
+	/**
+	 * Gets the behaviour points of the plan.
+	 *
+	 * @return Points
+	 */
+	public long getPoints() {
+		return this.points;
+	}
+
+	/**
+	 * Gets the steps of the plan.
+	 *
+	 * @return Number of steps
+	 */
+	public long getSteps() {
+		return this.steps;
+	}
+
+	/**
+	 * Finds the next leg of a rover.
+	 * When the nearest target is close, a breadth-first search keeps, of the
+	 * shortest paths to each cell, the one crossing the most points, and the
+	 * target with the most points per step is chosen. No target beyond twice
+	 * the steps of the nearest one is looked at, as a chain of targets that
+	 * far out is found again from the next stop. When the nearest target is
+	 * further, the rover drives to it down the distance field.
+	 *
+	 * @param search tables to search with
+	 * @param start  cell of the rover
+	 * @param gains  points of each rover's leg, set for this rover
+	 * @param rover  index of the rover
+	 * @return Direction menu keys of the leg, null if no target can be reached
+	 */
+	private int[] find(Search search, int start, int[] gains, int rover) {
+		int nearest = field.getDistance(start % width, start / width);
+		if (nearest < 0) {
+			return null;
+		}
+		if (nearest > SEARCH_STEPS) {
+			return descend(start, nearest, gains, rover);
+		}
+		int limit = 2 * nearest;
+		int mark = ++search.mark;
+		search.seen[start] = mark;
+		search.depth[start] = 0;
+		search.gain[start] = 0;
+		search.queue[0] = start;
+		int tail = 1;
+		int best = -1;
+		for (int head = 0; head < tail; head++) {
+			int cell = search.queue[head];
+			int d = search.depth[cell];
+			if (d > 0 && points(cell) > 0) {
+				if (best < 0) {
+					best = cell;
+				} else if ((long) search.gain[cell] * search.depth[best] > (long) search.gain[best] * d) {
+					best = cell;
+				}
+				if (search.gain[best] == 2 * search.depth[best]) {
+					// every step is a mineral, nothing scores more
+					break;
+				}
+			}
+			if (d >= limit) {
+				continue;
+			}
+			int x = cell % width;
+			int y = cell / width;
+			for (int key = 1; key <= 8; key++) {
+				int nx = x + Direction.STEP_X[key];
+				int ny = y + Direction.STEP_Y[key];
+				if (!grid.contains(nx, ny)) {
+					continue;
+				}
+				int next = ny * width + nx;
+				int p = points(next);
+				if (p < 0) {
+					continue;
+				}
+				int g = search.gain[cell] + p;
+				if (search.seen[next] != mark) {
+					search.seen[next] = mark;
+					search.depth[next] = d + 1;
+					search.gain[next] = g;
+					search.via[next] = (byte) key;
+					search.queue[tail++] = next;
+				} else if (search.depth[next] == d + 1 && g > search.gain[next]) {
+					search.gain[next] = g;
+					search.via[next] = (byte) key;
+				}
+			}
+		}
+		int[] keys = new int[search.depth[best]];
+		int cell = best;
+		for (int i = keys.length - 1; i >= 0; i--) {
+			int key = search.via[cell];
+			keys[i] = key;
+			cell -= Direction.STEP_Y[key] * width + Direction.STEP_X[key];
+		}
+		gains[rover] = search.gain[best];
+		return keys;
+	}
+
+	/**
+	 * Follows the distance field from a rover to the nearest target.
+	 *
+	 * @param start   cell of the rover
+	 * @param nearest steps to the nearest target
+	 * @param gains   points of each rover's leg, set for this rover
+	 * @param rover   index of the rover
+	 * @return Direction menu keys of the leg
+	 */
+	private int[] descend(int start, int nearest, int[] gains, int rover) {
+		int[] keys = new int[nearest];
+		int cell = start;
+		int gain = 0;
+		for (int i = 0; i < nearest; i++) {
+			int key = field.getStep(cell % width, cell / width);
+			keys[i] = key;
+			cell += Direction.STEP_Y[key] * width + Direction.STEP_X[key];
+			gain += points(cell);
+		}
+		gains[rover] = gain;
+		return keys;
+	}
+
+	/**
+	 * Checks that a leg found at the start of the round still scores the same
+	 * and crosses no cell that an earlier rover has stopped on since.
+	 *
+	 * @param start cell of the rover
+	 * @param leg   direction menu keys of the leg
+	 * @param gain  points the leg scored when it was found
+	 * @return true if the leg can be taken
+	 */
+	private boolean isClear(int start, int[] leg, int gain) {
+		int cell = start;
+		int sum = 0;
+		for (int key : leg) {
+			cell += Direction.STEP_Y[key] * width + Direction.STEP_X[key];
+			int p = points(cell);
+			if (p < 0) {
+				return false;
+			}
+			sum += p;
+		}
+		return sum == gain;
+	}
+
+	/**
+	 * Gets the points a rover scores for driving onto a cell of the copy.
+	 *
+	 * @param cell cell of the copy
+	 * @return 1 for a rock, 2 for a mineral, 0 for empty land, -1 if the rover cannot enter
+	 */
+	private int points(int cell) {
+		char symbol = grid.get(cell % width, cell / width);
+		if (symbol == Entitys.EMPTY) {
+			return 0;
+		}
+		if (symbol == Entitys.Rock.getSymbol()) {
+			return 1;
+		}
+		return symbol == Entitys.Mineral.getSymbol() ? 2 : -1;
+	}
+
+	/**
+	 * Rewrites a cell of the copy and repairs the distance field.
+	 *
+	 * @param cell   cell of the copy
+	 * @param symbol new symbol
+	 */
+	private void rewrite(int cell, char symbol) {
+		int x = cell % width;
+		int y = cell / width;
+		if (grid.get(x, y) != symbol) {
+			grid.set(x, y, symbol);
+			field.update(x, y);
+		}
+	}
+
+	/**
+	 * Adds a leg to the plan.
+	 *
+	 * @param rover index of the rover
+	 * @param leg   direction menu keys of the leg
+	 */
+	private void addLeg(int rover, int[] leg) {
+		if (legCount == legs.length) {
+			legs = Arrays.copyOf(legs, legCount * 2);
+			legRovers = Arrays.copyOf(legRovers, legCount * 2);
+		}
+		legRovers[legCount] = rover;
+		legs[legCount++] = leg;
+	}
+}
@@ -0,0 +1,39 @@
+/**
+ * This class stores the health of entities by position, in a cell map
+ * that can also move a health along with its entity.
+ *
+ * @author Soma Hayasaka,hayasakas@student.unimelb.edu.au,1396301
+ *
+ */
+public class HealthStore extends CellMap {
+
+	/**
+	 * Creates an empty store.
+	 */
+	public HealthStore() {
+		super();
+	}
+
+	/**
+	 * Creates an empty store sized for a number of entities.
+	 *
+	 * @param expected Number of entities expected
+	 */
+	public HealthStore(int expected) {
+		super(expected);
+	}
+
+	/**
+	 * Moves health from one position to another.
+	 *
+	 * @param fromX X coordinate to move from
+	 * @param fromY Y coordinate to move from
+	 * @param toX   X coordinate to move to
+	 * @param toY   Y coordinate to move to
+	 */
+	public void move(int fromX, int fromY, int toX, int toY) {
+		int health = get(fromX, fromY);
+		remove(fromX, fromY);
+		put(toX, toY, health);
+	}
+}
@@ -0,0 +1,242 @@
+/**
+ * This class draws the Martian land map to the console.
+ * Each frame is built in a byte buffer that is kept between frames, so
+ * only rows changed since the last frame are copied again, and the whole
+ * frame is written with one call. A map too large for its frame to be kept
+ * is written a chunk of rows at a time through a small reused buffer, so
+ * drawing never holds more than a chunk of a sparse or tiled map.
+ *
+ * @author Soma Hayasaka,hayasakas@student.unimelb.edu.au,1396301
+ *
+ */
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+
+public class MapRenderer {
+
+	/** When show() draws the map */
+	public enum Refresh {
+		/** Draw the whole map every given number of steps */
+		EVERY_STEP,
+		/** Draw the map after loading, then only when render() is called */
+		ON_DEMAND,
+		/** Draw only the rows changed since the last frame */
+		CHANGED_ROWS
+	}
+
+	private static final byte[] HEADER = ("Here is a layout of Martian land." + System.lineSeparator()
+			+ System.lineSeparator()).getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] NEWLINE = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+	/** Largest frame in bytes kept between frames */
+	private static final long FRAME_LIMIT = 1 << 24;
+	/** Bytes of rows written at once when the frame is not kept, unless one row is longer */
+	private static final int CHUNK_BYTES = 1 << 16;
+
+	private final MartianGrid grid;
+	private final PrintStream out;
+
+	private Refresh refresh = Refresh.EVERY_STEP;
+	/** Number of steps between frames for EVERY_STEP */
+	private int interval = 1;
+	/** Number of times show() has been called */
+	private long steps = 0;
+
+	/** Frame kept between calls, built when first needed */
+	private byte[] frame = null;
+	/** Rows being written when the frame is not kept, built when first needed */
+	private byte[] chunk = null;
+	/** Rows of the frame that no longer match the grid */
+	private final BitSet stale = new BitSet();
+	/** Rows changed since the last frame was written */
+	private final BitSet changed = new BitSet();
+
+	/**
+	 * Creates a renderer writing to the console.
+	 *
+	 * @param grid grid to draw
+	 */
+	public MapRenderer(MartianGrid grid) {
+		this(grid, System.out);
+	}
+
+	/**
+	 * Creates a renderer.
+	 *
+	 * @param grid grid to draw
+	 * @param out  stream to write frames to
+	 */
+	public MapRenderer(MartianGrid grid, PrintStream out) {
+		this.grid = grid;
+		this.out = out;
+	}
+
+	/**
+	 * Sets when show() draws the map.
+	 *
+	 * @param refresh  refresh policy
+	 * @param interval number of steps between frames for EVERY_STEP
+	 */
+	public void setRefresh(Refresh refresh, int interval) {
+		this.refresh = refresh;
+		this.interval = Math.max(1, interval);
+		this.steps = 0;
+	}
+
+	/**
+	 * Records that a row of the grid has changed.
+	 *
+	 * @param y Y coordinate of the row
+	 */
+	public void markChanged(int y) {
+		if (frame != null) {
+			stale.set(y);
+		}
+		changed.set(y);
+	}
+
+	/**
+	 * Draws the map if the refresh policy asks for it.
+	 * Called once for every step of the mission.
+	 */
+	public void show() {
+		switch (refresh) {
+			case EVERY_STEP:
+				if (steps++ % interval == 0) {
+					render();
+				}
+				break;
+			case CHANGED_ROWS:
+				if (steps++ == 0) {
+					render();
+				} else {
+					renderChanged();
+				}
+				break;
+			case ON_DEMAND:
+				if (steps++ == 0) {
+					render();
+				}
+				break;
+			default:
+				break;
+		}
+	}
+
+	/**
+	 * Draws the whole map now.
+	 */
+	public void render() {
+		if (keepsFrame()) {
+			int length = updateFrame();
+			out.write(frame, 0, length);
+		} else {
+			out.write(HEADER, 0, HEADER.length);
+			writeRows();
+			out.write(NEWLINE, 0, NEWLINE.length);
+		}
+		out.flush();
+		changed.clear();
+	}
+
+	/**
+	 * Draws only the rows changed since the last frame, each after its row number.
+	 */
+	public void renderChanged() {
+		if (changed.isEmpty()) {
+			return;
+		}
+		boolean kept = keepsFrame();
+		if (kept) {
+			updateFrame();
+		}
+		int rowBytes = grid.getWidth() + NEWLINE.length;
+		for (int y = changed.nextSetBit(0); y >= 0; y = changed.nextSetBit(y + 1)) {
+			out.print("Row " + y + ": ");
+			if (kept) {
+				out.write(frame, HEADER.length + y * rowBytes, rowBytes);
+			} else {
+				copyRow(y, chunk(), 0);
+				out.write(chunk, 0, rowBytes);
+			}
+		}
+		out.write(NEWLINE, 0, NEWLINE.length);
+		out.flush();
+		changed.clear();
+	}
+
+	/**
+	 * Checks if the whole frame is small enough to be kept between frames.
+	 *
+	 * @return true if the frame is kept
+	 */
+	private boolean keepsFrame() {
+		long rowBytes = grid.getWidth() + NEWLINE.length;
+		return HEADER.length + grid.getHeight() * rowBytes + NEWLINE.length <= FRAME_LIMIT;
+	}
+
+	/**
+	 * Writes every row of the grid a chunk of rows at a time.
+	 */
+	private void writeRows() {
+		int rowBytes = grid.getWidth() + NEWLINE.length;
+		byte[] buffer = chunk();
+		int rows = buffer.length / rowBytes;
+		for (int y = 0; y < grid.getHeight(); y += rows) {
+			int count = Math.min(rows, grid.getHeight() - y);
+			for (int i = 0; i < count; i++) {
+				copyRow(y + i, buffer, i * rowBytes);
+			}
+			out.write(buffer, 0, count * rowBytes);
+		}
+	}
+
+	/**
+	 * Gets the buffer rows are written through, building it on first use.
+	 *
+	 * @return Buffer holding at least one row
+	 */
+	private byte[] chunk() {
+		if (chunk == null) {
+			int rowBytes = grid.getWidth() + NEWLINE.length;
+			chunk = new byte[Math.max(1, CHUNK_BYTES / rowBytes) * rowBytes];
+		}
+		return chunk;
+	}
+
+	/**
+	 * Copies a row of the grid and its line end into a buffer.
+	 *
+	 * @param y      Y coordinate of the row
+	 * @param dst    buffer to copy into
+	 * @param offset position of the row in the buffer
+	 */
+	private void copyRow(int y, byte[] dst, int offset) {
+		grid.copyRow(y, dst, offset);
+		System.arraycopy(NEWLINE, 0, dst, offset + grid.getWidth(), NEWLINE.length);
+	}
+
+	/**
+	 * Copies rows that changed into the frame, building it on first use.
+	 *
+	 * @return length of the frame in bytes
+	 */
+	private int updateFrame() {
+		int rowBytes = grid.getWidth() + NEWLINE.length;
+		int length = HEADER.length + grid.getHeight() * rowBytes + NEWLINE.length;
+		if (frame == null) {
+			frame = new byte[length];
+			System.arraycopy(HEADER, 0, frame, 0, HEADER.length);
+			for (int y = 0; y < grid.getHeight(); y++) {
+				System.arraycopy(NEWLINE, 0, frame, HEADER.length + y * rowBytes + grid.getWidth(), NEWLINE.length);
+			}
+			System.arraycopy(NEWLINE, 0, frame, length - NEWLINE.length, NEWLINE.length);
+			stale.set(0, grid.getHeight());
+		}
+		for (int y = stale.nextSetBit(0); y >= 0; y = stale.nextSetBit(y + 1)) {
+			grid.copyRow(y, frame, HEADER.length + y * rowBytes);
+		}
+		stale.clear();
+		return length;
+	}
+}
@@ -0,0 +1,212 @@
+/**
+ * This class saves and loads binary snapshots of a Martian land.
+ * Unlike the text map, a snapshot keeps the health of every living entity
+ * and the behaviour score, so a mission can be resumed. The cells are
+ * stored raw with the position index of every entity and guarded by
+ * checksums, so loading maps the file and copies each part in one go
+ * without checking or scanning the cells.
+ *
+ * Layout, all numbers big-endian:
+ * header (magic, version, width, height, entity types, behaviour score,
+ * cell checksum, index checksum, then the count of each entity by
+ * ordinal), the cells row after row, the packed positions of each entity
+ * in ordinal order, and one health value for every living entity in
+ * ordinal and then position order.
+ *
+ * @author Soma Hayasaka,hayasakas@student.unimelb.edu.au,1396301
+ *
+ */
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+import entities.Entitys;
+
+public class MapSnapshot {
+	/** File name extension of snapshots */
+	public static final String EXTENSION = ".snap";
+
+	/** "MSNP", marks a snapshot */
+	private static final int MAGIC = 0x4D534E50;
+	private static final int VERSION = 1;
+	/** Header bytes before the entity counts */
+	private static final int FIXED_HEADER_BYTES = 32;
+
+	/**
+	 * Checks if a file is a snapshot.
+	 *
+	 * @param fileName file name to check
+	 * @return true if the file starts with the snapshot mark
+	 * @throws IOException if IO error occurs
+	 */
+	public static boolean isSnapshot(String fileName) throws IOException {
+		File file = new File(fileName);
+		if (!file.isFile() || file.length() < FIXED_HEADER_BYTES) {
+			return false;
+		}
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer magic = ByteBuffer.allocate(4);
+			channel.read(magic, 0);
+			return magic.getInt(0) == MAGIC;
+		}
+	}
+
+	/**
+	 * Saves a snapshot.
+	 *
+	 * @param grid          grid holding the map
+	 * @param positions     positions of each entity, indexed by ordinal
+	 * @param behaviorScore behaviour score
+	 * @param health        health of each living entity in ordinal and then position order
+	 * @param fileName      file name to write
+	 * @throws IOException if IO error occurs
+	 */
+	public static void save(MartianGrid grid, PositionIndex[] positions, int behaviorScore, int[] health,
+			String fileName) throws IOException {
+		ByteBuffer cells = grid.getCells();
+		long entities = 0;
+		for (PositionIndex index : positions) {
+			entities += index.size();
+		}
+		ByteBuffer index = ByteBuffer.allocate(Math.toIntExact(entities * 8 + health.length * 4L));
+		LongBuffer keys = index.asLongBuffer();
+		for (PositionIndex found : positions) {
+			found.writeKeys(keys);
+		}
+		index.position(keys.position() * 8);
+		index.asIntBuffer().put(health);
+		index.clear();
+
+		ByteBuffer header = ByteBuffer.allocate(FIXED_HEADER_BYTES + positions.length * 4);
+		header.putInt(MAGIC).putInt(VERSION);
+		header.putInt(grid.getWidth()).putInt(grid.getHeight());
+		header.putInt(positions.length).putInt(behaviorScore);
+		header.putInt(checksum(cells)).putInt(checksum(index));
+		for (PositionIndex found : positions) {
+			header.putInt(found.size());
+		}
+		header.flip();
+
+		MartianMapSaver.replace(fileName, channel -> {
+			ByteBuffer[] parts = { header, cells, index };
+			long total = header.remaining() + cells.remaining() + index.remaining();
+			while (total > 0) {
+				total -= channel.write(parts);
+			}
+		});
+	}
+
+	/**
+	 * Loads a snapshot into a new Martian land.
+	 *
+	 * @param fileName file name to read
+	 * @return Martian land with the saved health values and behaviour score
+	 * @throws FileNotFoundException if file not found
+	 * @throws InvalidFileException  if the file is not a snapshot or is damaged
+	 * @throws IOException           if IO error occurs
+	 */
+	public static MartianLand load(String fileName) throws FileNotFoundException, InvalidFileException, IOException {
+		File file = new File(fileName);
+		if (!file.exists()) {
+			throw new FileNotFoundException("File Not Found, aborting mission.");
+		}
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < FIXED_HEADER_BYTES) {
+				throw damaged();
+			}
+			ByteBuffer fixed = ByteBuffer.allocate(FIXED_HEADER_BYTES);
+			readFully(channel, fixed, 0);
+			fixed.flip();
+			if (fixed.getInt() != MAGIC || fixed.getInt() != VERSION) {
+				throw damaged();
+			}
+			int width = fixed.getInt();
+			int height = fixed.getInt();
+			int types = fixed.getInt();
+			int behaviorScore = fixed.getInt();
+			int cellChecksum = fixed.getInt();
+			int indexChecksum = fixed.getInt();
+			// a snapshot from a build with other entities cannot be trusted
+			if (width <= 0 || height <= 0 || (long) width * height > Integer.MAX_VALUE - 8
+					|| types != Entitys.values().length) {
+				throw damaged();
+			}
+
+			ByteBuffer countBytes = ByteBuffer.allocate(types * 4);
+			readFully(channel, countBytes, FIXED_HEADER_BYTES);
+			countBytes.flip();
+			int[] counts = new int[types];
+			long entities = 0;
+			long living = 0;
+			for (Entitys entitys : Entitys.values()) {
+				counts[entitys.ordinal()] = countBytes.getInt();
+				if (counts[entitys.ordinal()] < 0) {
+					throw damaged();
+				}
+				entities += counts[entitys.ordinal()];
+				if (entitys.getHealth() > 0) {
+					living += counts[entitys.ordinal()];
+				}
+			}
+			long headerBytes = FIXED_HEADER_BYTES + types * 4L;
+			long cellBytes = (long) width * height;
+			long indexBytes = entities * 8 + living * 4;
+			if (entities > cellBytes || size != headerBytes + cellBytes + indexBytes) {
+				throw damaged();
+			}
+			if (indexBytes > Integer.MAX_VALUE) {
+				throw new InvalidFileException("Martian land is too large to load, aborting mission.");
+			}
+
+			MappedByteBuffer cells = channel.map(FileChannel.MapMode.READ_ONLY, headerBytes, cellBytes);
+			MappedByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, headerBytes + cellBytes,
+					indexBytes);
+			if (checksum(cells) != cellChecksum || checksum(index) != indexChecksum) {
+				throw damaged();
+			}
+
+			MartianGrid grid = new MartianGrid(width, height);
+			grid.setCells(cells, 0);
+			PositionIndex[] found = new PositionIndex[types];
+			LongBuffer keys = index.asLongBuffer();
+			for (int i = 0; i < types; i++) {
+				keys.limit(keys.position() + counts[i]);
+				found[i] = new PositionIndex(keys);
+			}
+			index.position((int) (entities * 8));
+			return new MartianLand(grid, found, behaviorScore, index.asIntBuffer());
+		}
+	}
+
+	/**
+	 * Computes the checksum of the remaining bytes of a buffer.
+	 *
+	 * @param buffer bytes to check, the position is not moved
+	 * @return CRC-32C of the bytes
+	 */
+	private static int checksum(ByteBuffer buffer) {
+		CRC32C crc = new CRC32C();
+		crc.update(buffer.duplicate());
+		return (int) crc.getValue();
+	}
+
+	private static InvalidFileException damaged() {
+		return new InvalidFileException("Invalid File content, aborting mission.");
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Snapshot ended early");
+			}
+		}
+	}
+}
@@ -9,10 +9,8 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.InputStreamReader;
 import java.util.Scanner;
 
 import entities.EarthAnimals;
@@ -32,6 +30,25 @@ public class MarsHabitatApplication {
 	private static MartianLand martianland;
 	private static Scanner scanner = new Scanner(System.in);
 	private static String logfile = "resources/habitability1.log";// null;
+	/** Number of runs read from the habitability log at once */
+	private final static int LOG_PAGE = 64;
+	private static boolean verify = false;
+	private static boolean sparse = false;
+	private static String tiles = null;
+	private static String batchfile = null;
+	private static String refresh = null;
+	private static String snapshots = null;
+	private static String ticks = null;
+	private static String policy = "random";
+	private static String threads = null;
+	private static boolean harvest = false;
+	private static String placements = null;
+	private static String rollouts = null;
+	/** Writes habitability snapshots in the background, null if the log cannot be opened */
+	private static HabitabilityLogWriter recorder = null;
+	private static boolean logChanges = false;
+	/** Logs every change so the mission survives a crash, null if not logging */
+	private static WriteAheadLog wal = null;
 
 	/**
 	 * The main method, entry point of the application.
@@ -51,11 +68,49 @@ public class MarsHabitatApplication {
 				filename = args[i + 1];
 			} else if (args[i].equals("--l") && i < args.length - 1) {
 				logfile = args[i + 1];
+			} else if (args[i].equals("--b") && i < args.length - 1) {
+				batchfile = args[i + 1];
+			} else if (args[i].equals("--r") && i < args.length - 1) {
+				refresh = args[i + 1];
+			} else if (args[i].equals("--s") && i < args.length - 1) {
+				snapshots = args[i + 1];
+			} else if (args[i].equals("--c")) {
+				// compact: hold the map in a sparse grid
+				sparse = true;
+			} else if (args[i].equals("--t") && i < args.length - 1) {
+				// tiled: read the map from its file, holding at most this many megabytes
+				tiles = args[i + 1];
+			} else if (args[i].equals("--a") && i < args.length - 1) {
+				// animals: run the Martian animals on their own for this many ticks
+				ticks = args[i + 1];
+			} else if (args[i].equals("--p") && i < args.length - 1) {
+				policy = args[i + 1];
+			} else if (args[i].equals("--j") && i < args.length - 1) {
+				// jobs: run animal ticks, harvest plans, placement proposals and rollouts on this many threads
+				threads = args[i + 1];
+			} else if (args[i].equals("--h")) {
+				// harvest: plan routes for every rover and drive them before anything else
+				harvest = true;
+			} else if (args[i].equals("--o") && i < args.length - 1) {
+				// optimize: propose up to this many placements for the robots
+				placements = args[i + 1];
+			} else if (args[i].equals("--m") && i < args.length - 1) {
+				// Monte Carlo: estimate what the Martian animals eat over this many rollouts
+				rollouts = args[i + 1];
+			} else if (args[i].equals("--w")) {
+				// write-ahead log: recover the mission if the last run did not finish
+				logChanges = true;
+			} else if (args[i].equals("--d")) {
+				// debug: cross-check habitability counts with full scans
+				verify = true;
 			}
 		}
 
 		/* 1 Martian Land Map */
 		try {
+			if (filename == null && (batchfile != null || ticks != null || harvest || placements != null || rollouts != null)) {
+				filename = DEFAULT_FILE_PATH;
+			}
 			if (filename == null) {
 				System.out.println("Please enter");
 				System.out.println("[1] to load Martian map from a file");
@@ -73,32 +128,308 @@ public class MarsHabitatApplication {
 				}
 			}
 
-			List<String> marianList = readfile(filename);
-			martianland = new MartianLand(marianList);
+			if (logChanges && tiles == null && (batchfile != null || ticks != null || harvest)
+					&& WriteAheadLog.hasChanges(filename)) {
+				// the recovered land already holds the work of the script, ticks or harvest
+				System.out.println("The last run of this map did not finish. Recover it without --b, --a or --h first,"
+						+ " so that its work is not done twice.");
+				return;
+			}
+			if (logChanges && tiles == null && WriteAheadLog.hasSnapshot(filename)) {
+				martianland = MapSnapshot.load(WriteAheadLog.snapshotName(filename));
+			} else if (MapSnapshot.isSnapshot(filename)) {
+				martianland = MapSnapshot.load(filename);
+			} else if (tiles != null) {
+				martianland = MartianMapLoader.loadTiled(filename, parseBudget(tiles));
+			} else {
+				martianland = MartianMapLoader.load(filename, true, sparse);
+			}
+			martianland.setVerify(verify);
+			setRefresh(refresh);
+			openRecorder(snapshots);
+			boolean finished = false;
+			try {
+				openWriteAheadLog(filename);
+				if (batchfile != null || ticks != null || harvest || placements != null || rollouts != null) {
+					if (placements != null) {
+						runPlacements(placements);
+					}
+					if (rollouts != null) {
+						runRisk(rollouts, policy);
+					}
+					if (harvest) {
+						runHarvest();
+					}
+					if (ticks != null) {
+						runSimulation(ticks, policy);
+					}
+					if (batchfile != null) {
+						runBatch(batchfile);
+					}
+				} else {
+					martianland.show();
+					martianland.showHabitabilityStatus();
 
-			martianland.show();
-			martianland.showHabitabilityStatus();
+					/* 2 Main Mnue */
+					Boolean is_loop = true;
+					while (is_loop) {
+						is_loop = mainMenu();
+						martianland.endStep();
+					}
+				}
+				finished = true;
+			} finally {
+				closeRecorder();
+				closeWriteAheadLog(filename, finished);
+				closeLand();
+			}
 
 		} catch (FileNotFoundException e) {
 			System.out.println(e.getMessage());
 			return;
 		} catch (InvalidFileException e) {
 			System.out.println(e.getMessage());
+			showFaultLocation(e.getRow(), e.getColumn());
 			return;
 		} catch (UnknownEntityException e) {
 			System.out.println(e.getMessage());
+			showFaultLocation(e.getRow(), e.getColumn());
 			return;
 		} catch (IOException e) {
 			System.out.println(e.getMessage());
 			return;
 		}
+	}
+
+	/**
+	 * Parses the memory budget of a tiled map.
+	 *
+	 * @param megabytes budget in megabytes
+	 * @return budget in bytes, 64 MB if the number is invalid
+	 */
+	private static long parseBudget(String megabytes) {
+		try {
+			return Math.max(1, Long.parseLong(megabytes)) << 20;
+		} catch (NumberFormatException e) {
+			System.out.println("Invalid number format.");
+			return 64L << 20;
+		}
+	}
+
+	/**
+	 * Sets how often the map is drawn.
+	 *
+	 * @param policy a number of steps, "demand" or "changed", null to draw every step
+	 */
+	private static void setRefresh(String policy) {
+		if (policy == null) {
+			return;
+		}
+		MapRenderer renderer = martianland.getRenderer();
+		if (policy.equals("demand")) {
+			renderer.setRefresh(MapRenderer.Refresh.ON_DEMAND, 1);
+		} else if (policy.equals("changed")) {
+			renderer.setRefresh(MapRenderer.Refresh.CHANGED_ROWS, 1);
+		} else {
+			try {
+				renderer.setRefresh(MapRenderer.Refresh.EVERY_STEP, Integer.parseInt(policy));
+			} catch (NumberFormatException e) {
+				System.out.println("Invalid number format.");
+			}
+		}
+	}
+
+	/**
+	 * Replays a script of menu inputs without printing the map after each step.
+	 *
+	 * @param fileName file name of the script, - for standard input
+	 * @throws FileNotFoundException if script not found
+	 * @throws IOException           if IO error occurs
+	 */
+	private static void runBatch(String fileName) throws FileNotFoundException, IOException {
+		MissionBatch batch = new MissionBatch(martianland);
+		if (fileName.equals("-")) {
+			batch.run(new BufferedReader(new InputStreamReader(System.in)));
+		} else {
+			File file = new File(fileName);
+			if (!file.exists()) {
+				throw new FileNotFoundException("File Not Found, aborting mission.");
+			}
+			try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+				batch.run(reader);
+			}
+		}
+		batch.showSummary();
+		recordHabitability();
+		if (batch.getSaveFile() != null) {
+			try {
+				writefile(batch.getSaveFile());
+			} catch (Exception e) {
+				System.out.println("Cannot create file for Martian Land Map.");
+			}
+		}
+	}
+
+	/**
+	 * Proposes where the robots should plant and rear cattle.
+	 *
+	 * @param count largest number of placements
+	 */
+	private static void runPlacements(String count) {
+		if (martianland.isTiled()) {
+			System.out.println("Placement proposals are not used with a tiled map.");
+			return;
+		}
+		int budget;
+		int threadCount = Runtime.getRuntime().availableProcessors();
+		try {
+			budget = Integer.parseInt(count);
+			if (threads != null) {
+				threadCount = Integer.parseInt(threads);
+			}
+		} catch (NumberFormatException e) {
+			System.out.println("Invalid number format.");
+			return;
+		}
+		long start = System.nanoTime();
+		PlacementOptimizer optimizer = PlacementOptimizer.propose(martianland, budget, threadCount);
+		long millis = (System.nanoTime() - start) / 1_000_000;
+		optimizer.showProposals();
+		if (verify) {
+			System.out.println("Proposing took " + millis + " ms.");
+		}
+	}
 
-		/* 2 Main Mnue */
-		Boolean is_loop = true;
-		while (is_loop) {
-			is_loop = mainMenu();
+	/**
+	 * Estimates what the Martian animals are likely to eat, without changing the land.
+	 *
+	 * @param count number of rollouts
+	 * @param name  name of the policy choosing the moves
+	 */
+	private static void runRisk(String count, String name) {
+		if (martianland.isTiled()) {
+			System.out.println("Risk estimates are not used with a tiled map.");
+			return;
 		}
+		if (name.startsWith("nearest-")) {
+			// the distance fields follow the land, not the rollouts
+			System.out.println("Risk estimates use the random, vegetables or dogs policy.");
+			return;
+		}
+		AnimalPolicy animalPolicy = AnimalPolicy.forName(name, martianland);
+		if (animalPolicy == null) {
+			System.out.println("Unknown policy, use random, vegetables or dogs.");
+			return;
+		}
+		int rolloutCount;
+		int threadCount = Runtime.getRuntime().availableProcessors();
+		try {
+			rolloutCount = Integer.parseInt(count);
+			if (threads != null) {
+				threadCount = Integer.parseInt(threads);
+			}
+		} catch (NumberFormatException e) {
+			System.out.println("Invalid number format.");
+			return;
+		}
+		RiskEstimator estimator = new RiskEstimator(martianland, animalPolicy);
+		estimator.setThreads(threadCount);
+		long start = System.nanoTime();
+		estimator.run(rolloutCount);
+		long millis = (System.nanoTime() - start) / 1_000_000;
+		estimator.close();
+		estimator.showSummary();
+		if (verify) {
+			System.out.println("Rollouts took " + millis + " ms.");
+		}
+	}
 
+	/**
+	 * Plans routes for every rover to harvest rocks and minerals and drives them.
+	 */
+	private static void runHarvest() {
+		if (martianland.isTiled()) {
+			System.out.println("Harvest planning is not used with a tiled map.");
+			return;
+		}
+		HarvestPlanner planner = new HarvestPlanner(martianland);
+		if (threads != null) {
+			try {
+				planner.setThreads(Integer.parseInt(threads));
+			} catch (NumberFormatException e) {
+				System.out.println("Invalid number format.");
+			}
+		}
+		long start = System.nanoTime();
+		planner.plan();
+		long millis = (System.nanoTime() - start) / 1_000_000;
+		planner.close();
+		planner.drive(martianland);
+		planner.showSummary();
+		if (verify) {
+			System.out.println("Planning took " + millis + " ms.");
+		}
+		martianland.showHabitabilityStatus();
+		recordHabitability();
+	}
+
+	/**
+	 * Runs the Martian animals on their own without printing the map.
+	 *
+	 * @param count number of ticks to run
+	 * @param name  name of the policy choosing the moves
+	 */
+	private static void runSimulation(String count, String name) {
+		if (name.startsWith("nearest-") && martianland.isTiled()) {
+			System.out.println("Distance fields are not used with a tiled map.");
+			return;
+		}
+		AnimalPolicy animalPolicy = AnimalPolicy.forName(name, martianland);
+		if (animalPolicy == null) {
+			System.out.println("Unknown policy, use random, vegetables, dogs, nearest-vegetables or nearest-dogs.");
+			return;
+		}
+		long tickCount;
+		try {
+			tickCount = Long.parseLong(count);
+		} catch (NumberFormatException e) {
+			System.out.println("Invalid number format.");
+			return;
+		}
+		AnimalSimulation simulation = new AnimalSimulation(martianland, animalPolicy);
+		if (threads != null) {
+			if (martianland.isTiled()) {
+				System.out.println("Parallel ticks are not used with a tiled map.");
+			} else {
+				try {
+					simulation.setThreads(Integer.parseInt(threads), AnimalSimulation.DEFAULT_STRIPE_ROWS);
+				} catch (NumberFormatException e) {
+					System.out.println("Invalid number format.");
+				}
+			}
+		}
+		long start = System.nanoTime();
+		simulation.run(tickCount);
+		long millis = (System.nanoTime() - start) / 1_000_000;
+		simulation.close();
+		simulation.showSummary();
+		if (verify) {
+			System.out.println("Simulation took " + millis + " ms.");
+		}
+		martianland.showHabitabilityStatus();
+		recordHabitability();
+	}
+
+	/**
+	 * Prints where a map file first went wrong when debugging.
+	 *
+	 * @param row    row of the first offending cell, -1 if unknown
+	 * @param column column of the first offending cell, -1 if unknown
+	 */
+	private static void showFaultLocation(int row, int column) {
+		if (verify && row >= 0) {
+			System.out.println("First offending cell at row " + row + ", column " + column + ".");
+		}
 	}
 
 	/**
@@ -142,86 +473,156 @@ public class MarsHabitatApplication {
 	}
 
 	/**
-	 * Writes Martian land map to file.
+	 * Writes Martian land map to file, as a binary snapshot if the name ends with .snap
+	 * and compressed if it ends with .rle.
 	 *
 	 * @param fileName file name to write
 	 * @throws FileNotFoundException if file not found
 	 * @throws IOException           if IO error occurs
 	 */
 	private static void writefile(String fileName) throws FileNotFoundException, IOException {
-		File file = new File(fileName);
-		FileWriter writer = new FileWriter(file);
-		final List<String> land = martianland.getLand();
-		for (String element : land) {
-			writer.write(element);
-			writer.write("\r\n");
-		}
-		writer.close();
+		if (fileName.endsWith(MapSnapshot.EXTENSION)) {
+			martianland.saveSnapshot(fileName);
+		} else if (fileName.endsWith(MartianMapSaver.COMPRESSED_EXTENSION)) {
+			martianland.saveCompressed(fileName);
+		} else {
+			martianland.save(fileName);
+		}
 	}
 
 	/**
-	 * Reads Martian land map from file.
+	 * Shows the habitability log from file.
 	 *
-	 * @param fileName file name to read
-	 * @return list of strings representing Martian land map
-	 * @throws FileNotFoundException  if file not found
-	 * @throws InvalidFileException   if file content is invalid
-	 * @throws UnknownEntityException if unknown entity found
-	 * @throws IOException            if IO error occurs
+	 * @param fileName file name of habitability log
+	 * @throws FileNotFoundException if log file not found
+	 * @throws IOException           if IO error occurs
 	 */
-	private static List<String> readfile(String fileName)
-			throws FileNotFoundException, InvalidFileException, UnknownEntityException, IOException {
-		File file = new File(fileName);
+	private static void showHabitabilityLog(String fileName) throws FileNotFoundException, IOException {
+		System.out.println(fileName);
+		if (recorder != null) {
+			recorder.flush();
+		}
+		try (HabitabilityLog log = HabitabilityLog.open(fileName, false)) {
+			int run = 1;
+			while (run <= log.size()) {
+				// runs are read a page at a time instead of one read per run
+				for (HabitabilitySnapshot snapshot : log.page(run, LOG_PAGE)) {
+					System.out.println("Program run :" + run);
+					snapshot.show();
+					run++;
+				}
+			}
+		}
+	}
 
-		if (!file.exists()) {
-			throw new FileNotFoundException("File Not Found, aborting mission.");
+	/**
+	 * Opens the habitability log writer.
+	 *
+	 * @param interval number of moves between snapshots, null to record only at the end
+	 */
+	private static void openRecorder(String interval) {
+		try {
+			recorder = new HabitabilityLogWriter(logfile);
+		} catch (IOException e) {
+			System.out.println("Cannot write habitability log.");
+			return;
 		}
+		if (interval != null) {
+			try {
+				martianland.setRecorder(recorder, Integer.parseInt(interval));
+			} catch (NumberFormatException e) {
+				System.out.println("Invalid number format.");
+			}
+		}
+	}
 
-		// read the file
-		BufferedReader reader = new BufferedReader(new FileReader(file));
-		String line;
-		List<String> marianList = new ArrayList<>();
-		while ((line = reader.readLine()) != null) {
-			marianList.add(line);
+	/**
+	 * Opens the write-ahead log of the map, recovering the changes left by a
+	 * run that did not finish.
+	 * A tiled map is too large to be saved as a snapshot, so its changes are not logged.
+	 *
+	 * @param mapFile file name of the map
+	 * @throws IOException if the log is damaged
+	 */
+	private static void openWriteAheadLog(String mapFile) throws IOException {
+		if (!logChanges) {
+			return;
+		}
+		if (tiles != null) {
+			System.out.println("Write-ahead log is not used with a tiled map.");
+			return;
 		}
-		reader.close();
-		return marianList;
+		wal = WriteAheadLog.open(mapFile, martianland);
+		if (wal.getRecovered() > 0) {
+			System.out.println("Recovered " + wal.getRecovered() + " changes from the last run.");
+		}
+		martianland.setWriteAheadLog(wal);
 	}
 
 	/**
-	 * Shows the habitability log from file.
+	 * Closes the write-ahead log, deleting it if the run finished.
+	 * The log of a run that stopped on an error is kept, so that the next
+	 * run recovers the changes made before it.
 	 *
-	 * @param fileName file name of habitability log
-	 * @throws FileNotFoundException if log file not found
-	 * @throws IOException           if IO error occurs
+	 * @param mapFile  file name of the map
+	 * @param finished true if the run finished
 	 */
-	private static void showHabitabilityLog(String fileName) throws FileNotFoundException, IOException {
-		System.out.println(fileName);
-		File file = new File(fileName);
-
-		if (!file.exists()) {
-			throw new FileNotFoundException("File Not Found");
-		}
-
-		// read a file
-		BufferedReader reader = new BufferedReader(new FileReader(file));
-		String line;
-		int num = 1;
-		while ((line = reader.readLine()) != null) {
-			if (line.contains("==START==")) {
-				System.out.println("Program run :" + num);
-				System.out.println("Habitability Status");
-				System.out.println("======================");
-			} else if (line.contains("SCORE=")) {
-				String score = line.substring("SCORE=".length() + 1);
-				System.out.println("");
-				System.out.println("Total Habitability Score: " + score);
-			} else if (line.contains("==END==")) {
-				num++;
-			} else {
-				System.out.println(line);
+	private static void closeWriteAheadLog(String mapFile, boolean finished) {
+		if (wal == null) {
+			return;
+		}
+		martianland.setWriteAheadLog(null);
+		try {
+			wal.close();
+			if (finished) {
+				WriteAheadLog.delete(mapFile);
 			}
+		} catch (IOException e) {
+			System.out.println("Cannot write write-ahead log.");
 		}
+		if (verify) {
+			wal.showStats();
+		}
+		wal = null;
+	}
+
+	/**
+	 * Closes the files the Martian land is read from.
+	 */
+	private static void closeLand() {
+		try {
+			martianland.close();
+		} catch (IOException e) {
+			System.out.println("Cannot close Martian Land Map.");
+		}
+	}
+
+	/**
+	 * Records the habitability status of this run in the habitability log.
+	 */
+	private static void recordHabitability() {
+		if (recorder != null) {
+			recorder.record(martianland.getHabitabilitySnapshot());
+		}
+	}
+
+	/**
+	 * Writes the waiting snapshots and closes the habitability log writer.
+	 */
+	private static void closeRecorder() {
+		if (recorder == null) {
+			return;
+		}
+		martianland.setRecorder(null, 1);
+		try {
+			recorder.close();
+		} catch (IOException e) {
+			System.out.println("Cannot write habitability log.");
+		}
+		if (verify) {
+			recorder.showStats();
+		}
+		recorder = null;
 	}
 
 	/**
@@ -253,7 +654,6 @@ public class MarsHabitatApplication {
 			}
 		}
 		if (plantInput == 0) {
-			// martianland.unMove(robot, direction, to_symbol);
 			robot.add(direction);
 			martianland.show();
 			robotDirectionMenu(robot);
@@ -287,7 +687,6 @@ public class MarsHabitatApplication {
 			cattleInput = scanNum();
 		}
 		if (cattleInput == 0) {
-			// martianland.unMove(robot, direction, to_symbol);
 			martianland.show();
 			robot.add(direction);
 			robotDirectionMenu(robot);
@@ -526,35 +925,7 @@ public class MarsHabitatApplication {
 			} else if (entity.getSymbol() == Entitys.Dog.getSymbol()) {
 				System.out.println("Martian animal and Dog has entered a fight");
 
-				int animalHealth = martianland.getHealth(animal.get_x(), animal.get_y());
-				int dogHealth = martianland.getHealth(x, y);
-				// @TODO
-				martianland.removeHealth(animal.get_x(), animal.get_y());
-				martianland.removeHealth(x, y);
-				while (animalHealth > 0 && dogHealth > 0) {
-					dogHealth -= 2;
-					System.out
-							.println("Martian Animal attacked dog. Health of dog reduced by 2, Present Health: "
-									+ dogHealth);
-					if (dogHealth <= 0) {
-						System.out.println("Dog died");
-						System.out.println();
-						martianland.putHealth(x, y, animalHealth);
-						martianland.rewriteMapChar(x, y, '.');
-						break;
-					} else {
-						animalHealth -= 2;
-						System.out.println(
-								"Dog attacked Martian Animal. Martian Animal's health reduced by 2, Present Health: "
-										+ animalHealth);
-						if (animalHealth <= 0) {
-							System.out.println("Martian Animal died");
-							martianland.putHealth(x, y, dogHealth);
-							martianland.rewriteMapChar(x, y, to_symbol);
-							martianland.addBehaviorScore(7);
-						}
-					}
-				}
+				martianland.fightDog(animal, direction, true);
 
 			} else if (entity instanceof EarthAnimals) {
 				System.out.println("The cattle are killed by the martian animals.");
@@ -599,8 +970,14 @@ public class MarsHabitatApplication {
 		System.out.println("[4] to print the current habitability stats");
 		System.out.println("[5] to print the old habitability stats");
 		System.out.println("[6] to exit");
+		// with a refresh policy the map may not be drawn after a step, so it can be asked for
+		int options = 6;
+		if (refresh != null) {
+			System.out.println("[7] to show the map");
+			options = 7;
+		}
 		int mainInput = 0;
-		while (mainInput < 1 || 6 < mainInput) {
+		while (mainInput < 1 || options < mainInput) {
 			System.out.print("> ");
 			mainInput = scanNum();
 		}
@@ -633,8 +1010,11 @@ public class MarsHabitatApplication {
 			} else {
 				System.out.println("Cannot create file for Martian Land Map.");
 			}
+			recordHabitability();
 			System.out.println("Terminating the mission for now. See you next time.");
 			return false;
+		} else if (mainInput == 7) {
+			martianland.getRenderer().render();
 		}
 		return true;
 
@@ -0,0 +1,217 @@
+/**
+ * This class stores the Martian land map as a packed grid.
+ * Each cell is held as one byte in a flat array so that cells
+ * can be read and rewritten in place. Mostly empty maps can be held
+ * in a SparseMartianGrid instead.
+ *
+ * @author Soma Hayasaka,hayasakas@student.unimelb.edu.au,1396301
+ *
+ */
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Objects;
+
+public class MartianGrid {
+	/** Number of cells in a row */
+	private final int width;
+	/** Number of rows */
+	private final int height;
+	/** Cells stored row by row */
+	private final byte[] cells;
+
+	/**
+	 * Creates an empty grid.
+	 *
+	 * @param width  Number of cells in a row
+	 * @param height Number of rows
+	 */
+	public MartianGrid(int width, int height) {
+		this(width, height, new byte[width * height]);
+	}
+
+	/**
+	 * Creates a grid over an array of cells.
+	 *
+	 * @param width  Number of cells in a row
+	 * @param height Number of rows
+	 * @param cells  Cells stored row by row, null if a subclass stores them
+	 */
+	protected MartianGrid(int width, int height, byte[] cells) {
+		this.width = width;
+		this.height = height;
+		this.cells = cells;
+	}
+
+	/**
+	 * Creates an empty grid.
+	 *
+	 * @param width  Number of cells in a row
+	 * @param height Number of rows
+	 * @param sparse true to store only the parts of rows that are not empty
+	 * @return New grid
+	 */
+	public static MartianGrid create(int width, int height, boolean sparse) {
+		return sparse ? new SparseMartianGrid(width, height) : new MartianGrid(width, height);
+	}
+
+	/**
+	 * Checks if a grid of a given size can be created.
+	 *
+	 * @param width  Number of cells in a row
+	 * @param height Number of rows
+	 * @param sparse true for a sparse grid
+	 * @return true if the grid fits in one array
+	 */
+	public static boolean fits(long width, long height, boolean sparse) {
+		if (sparse) {
+			return SparseMartianGrid.fits(width, height);
+		}
+		return width * height <= Integer.MAX_VALUE - 8;
+	}
+
+	/**
+	 * Creates a grid from map rows.
+	 * All rows must have the same length.
+	 *
+	 * @param land list of strings representing the map
+	 */
+	public MartianGrid(List<String> land) {
+		this(land.get(0).length(), land.size());
+		for (int y = 0; y < height; y++) {
+			String line = land.get(y);
+			int offset = y * width;
+			for (int x = 0; x < width; x++) {
+				cells[offset + x] = (byte) line.charAt(x);
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of cells in a row.
+	 *
+	 * @return Width of the grid
+	 */
+	public int getWidth() {
+		return this.width;
+	}
+
+	/**
+	 * Gets the number of rows.
+	 *
+	 * @return Height of the grid
+	 */
+	public int getHeight() {
+		return this.height;
+	}
+
+	/**
+	 * Checks if a cell lies on the grid.
+	 *
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @return true if the cell is on the grid, false otherwise
+	 */
+	public boolean contains(int x, int y) {
+		return 0 <= x && x < width && 0 <= y && y < height;
+	}
+
+	/**
+	 * Gets the symbol at a cell.
+	 * A column outside the row fails instead of reading the next row.
+	 *
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @return Symbol at the cell
+	 */
+	public char get(int x, int y) {
+		return (char) (cells[y * width + Objects.checkIndex(x, width)] & 0xff);
+	}
+
+	/**
+	 * Rewrites the symbol at a cell.
+	 *
+	 * @param x      X coordinate
+	 * @param y      Y coordinate
+	 * @param symbol New symbol
+	 */
+	public void set(int x, int y, char symbol) {
+		cells[y * width + Objects.checkIndex(x, width)] = (byte) symbol;
+	}
+
+	/**
+	 * Copies a row from a buffer holding raw map bytes.
+	 *
+	 * @param y      Y coordinate of the row
+	 * @param buffer Buffer to copy from
+	 * @param offset Position of the first cell of the row in the buffer
+	 */
+	public void setRow(int y, ByteBuffer buffer, int offset) {
+		buffer.get(offset, cells, y * width, width);
+	}
+
+	/**
+	 * Copies every cell from a buffer holding the raw cells row after row.
+	 *
+	 * @param buffer Buffer to copy from
+	 * @param offset Position of the first cell in the buffer
+	 */
+	public void setCells(ByteBuffer buffer, int offset) {
+		buffer.get(offset, cells, 0, cells.length);
+	}
+
+	/**
+	 * Gets a read-only view of the raw cells, row after row.
+	 *
+	 * @return Buffer over the cells
+	 */
+	public ByteBuffer getCells() {
+		return ByteBuffer.wrap(cells).asReadOnlyBuffer();
+	}
+
+	/**
+	 * Copies the raw bytes of a row into an array.
+	 *
+	 * @param y      Y coordinate of the row
+	 * @param dst    Array to copy into
+	 * @param offset Position in the array for the first cell
+	 */
+	public void copyRow(int y, byte[] dst, int offset) {
+		System.arraycopy(cells, y * width, dst, offset, width);
+	}
+
+	/**
+	 * Builds a row as a string.
+	 *
+	 * @param y Y coordinate of the row
+	 * @return Row as a string
+	 */
+	public String getRow(int y) {
+		char[] row = new char[width];
+		int offset = y * width;
+		for (int x = 0; x < width; x++) {
+			row[x] = (char) (cells[offset + x] & 0xff);
+		}
+		return new String(row);
+	}
+
+	/**
+	 * Gets a read-only view of the grid as rows.
+	 * Rows are only built when they are asked for.
+	 *
+	 * @return list of strings representing the map
+	 */
+	public List<String> asLines() {
+		return new AbstractList<String>() {
+			@Override
+			public String get(int y) {
+				return getRow(y);
+			}
+
+			@Override
+			public int size() {
+				return height;
+			}
+		};
+	}
+}
@@ -7,23 +7,68 @@
  * @author Soma Hayasaka,hayasakas@student.unimelb.edu.au,1396301
  *
  */
-import java.util.HashMap;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
 import java.util.List;
-import java.util.Map;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
 
 import entities.Entity;
 import entities.Entitys;
 
-public class MartianLand {
-	private List<String> land;
+public class MartianLand implements AnimalLand {
+	/** Order in which entities are listed in the habitability status */
+	public static final List<Entitys> STATUS_ORDER = Collections.unmodifiableList(Arrays.asList(
+			Entitys.Potato,
+			Entitys.Mineral,
+			Entitys.Sheep,
+			Entitys.Lily,
+			Entitys.Eucalyptus,
+			Entitys.Rose,
+			Entitys.Cow,
+			Entitys.Goat,
+			Entitys.Dog,
+			Entitys.Tomato));
+
+	private final MartianGrid grid;
+	/** Draws the map, keeping the last frame between steps */
+	private final MapRenderer renderer;
 
 	private int behaviorScore = 0;
 
-	private Map<Integer, Map<Integer, Integer>> healths = new HashMap<Integer, Map<Integer, Integer>>();
+	/** Number of cells holding each entity, indexed by ordinal */
+	private final int[] counts = new int[Entitys.values().length];
+	/** Number of cells holding any entity */
+	private int entityTotal = 0;
+	/** Sum of the habitability scores of all entities on the map */
+	private int landScore = 0;
+	/** Positions of each entity, indexed by ordinal */
+	private final PositionIndex[] positions = new PositionIndex[Entitys.values().length];
+	/** Positions of all Martian animals */
+	private final PositionIndex animals = new PositionIndex();
+	/** Cross-checks the maintained counts against a full scan if true */
+	private boolean verify = false;
+	/** Runs full scans on the fork-join pool if true */
+	private final boolean parallel;
+
+	private HealthStore healths;
+
+	/** Records changes for undo and redo, null if not recording */
+	private MoveJournal journal = null;
+	/** Logs changes so they survive a crash, null if not logging */
+	private WriteAheadLog wal = null;
+	/** Finds paths for robots and rovers, created with the first search */
+	private PathFinder pathFinder = null;
+	/** Distances to each kind of target, indexed by ordinal, created when first asked for */
+	private final DistanceField[] fields = new DistanceField[DistanceField.Target.values().length];
+
+	/** Records habitability snapshots as the mission goes on, null if none */
+	private HabitabilityLogWriter recorder = null;
+	/** Number of moves between snapshots */
+	private int recordInterval = 1;
+	/** Number of moves made */
+	private long moves = 0;
 
 	/**
 	 * Creates a new MartianLand instance.
@@ -33,41 +78,85 @@ public class MartianLand {
 	 * @throws UnknownEntityException if unknown symbol is found
 	 */
 	public MartianLand(List<String> land) throws InvalidFileException, UnknownEntityException {
-		this.land = land;
+		this(MartianMapLoader.toGrid(land));
+	}
 
-		if (!isAllLenSame()) {
-			throw new InvalidFileException("Invalid File content, aborting mission.");
-		}
-		if (!isFirstLowAllHashes()
-				|| !isLastLowAllHashes()
-				|| !isHeadAndTailHashes()) {
-			// boundary is not match
-			throw new InvalidFileException("Invalid File content, aborting mission.");
-		}
+	/**
+	 * Creates a new MartianLand instance from a grid.
+	 * The grid must already be validated, see MartianMapLoader.
+	 *
+	 * @param grid grid holding the map
+	 */
+	public MartianLand(MartianGrid grid) {
+		this(grid, false);
+	}
 
-		if (!isAllEntityExist()) {
-			throw new UnknownEntityException("An unknown items found in martian land. aborting mission.");
+	/**
+	 * Creates a new MartianLand instance from a grid.
+	 * The grid must already be validated, see MartianMapLoader.
+	 *
+	 * @param grid     grid holding the map
+	 * @param parallel true to scan the map over row ranges on the fork-join pool
+	 */
+	public MartianLand(MartianGrid grid, boolean parallel) {
+		this.grid = grid;
+		this.parallel = parallel;
+		this.renderer = new MapRenderer(grid);
+		GridCensus census = GridCensus.take(grid, parallel);
+		PositionIndex[] found = new PositionIndex[Entitys.values().length];
+		for (Entitys entitys : Entitys.values()) {
+			found[entitys.ordinal()] = census.getPositions(entitys);
 		}
+		index(found, null);
+	}
 
-		setDefaultHealths();
-
+	/**
+	 * Creates a new MartianLand instance from the parts saved in a snapshot.
+	 * The positions and health values must match the grid.
+	 *
+	 * @param grid          grid holding the map
+	 * @param found         positions of each entity, indexed by ordinal
+	 * @param behaviorScore behaviour score
+	 * @param health        health of each living entity in ordinal and then position order
+	 */
+	MartianLand(MartianGrid grid, PositionIndex[] found, int behaviorScore, IntBuffer health) {
+		this.grid = grid;
+		this.parallel = true;
+		this.renderer = new MapRenderer(grid);
+		this.behaviorScore = behaviorScore;
+		index(found, health);
 	}
 
 	/**
-	 * Sets default health values for entities.
+	 * Sets up counts, score, positions and health values
+	 * of all entities from their positions.
+	 *
+	 * @param found  positions of each entity, indexed by ordinal
+	 * @param health health of each living entity in ordinal and then position order,
+	 *               null for the default health
 	 */
-	private void setDefaultHealths() {
-		for (int y = 1; y <= this.land.size(); y++) {
-			String line = this.land.get(y - 1);
-			for (int x = 1; x <= line.length(); x++) {
-				char symbol = line.charAt(x - 1);
-				Entity entity = getEntityBySymbol(symbol);
-				if (symbol == Entitys.Dog.getSymbol() || symbol == Entitys.Heebie.getSymbol()
-						|| symbol == Entitys.Jeebie.getSymbol()) {
-					if (!this.healths.containsKey(y - 1)) {
-						this.healths.put(y - 1, new HashMap<Integer, Integer>());
-					}
-					this.healths.get(y - 1).put(x - 1, entity.getHealth());
+	private void index(PositionIndex[] found, IntBuffer health) {
+		int living = 0;
+		for (Entitys entitys : Entitys.values()) {
+			int count = found[entitys.ordinal()].size();
+			counts[entitys.ordinal()] = count;
+			positions[entitys.ordinal()] = found[entitys.ordinal()];
+			entityTotal += count;
+			landScore += count * entitys.getEntity().getScore();
+			if (entitys.getHealth() > 0) {
+				living += count;
+			}
+		}
+		animals.addAll(getPositions(Entitys.Heebie));
+		animals.addAll(getPositions(Entitys.Jeebie));
+
+		// dogs and martian animals
+		healths = new HealthStore(living);
+		for (Entitys entitys : Entitys.values()) {
+			if (entitys.getHealth() > 0) {
+				PositionIndex index = getPositions(entitys);
+				for (int i = 0; i < index.size(); i++) {
+					healths.put(index.getX(i), index.getY(i), health == null ? entitys.getHealth() : health.get());
 				}
 			}
 		}
@@ -81,8 +170,7 @@ public class MartianLand {
 	 * @return Health value
 	 */
 	public int getHealth(int x, int y) {
-		return this.healths.get(y).get(x);
-
+		return this.healths.get(x, y);
 	}
 
 	/**
@@ -93,8 +181,10 @@ public class MartianLand {
 	 * @param v Amount to increase
 	 */
 	public void addHealth(int x, int y, int v) {
-		int now = getHealth(x, y);
-		putHealth(x, y, now + v);
+		if (journal != null) {
+			journal.health(x, y, healthOrNone(x, y), this.healths.get(x, y) + v);
+		}
+		writeHealth(x, y, this.healths.get(x, y) + v);
 	}
 
 	/**
@@ -104,7 +194,10 @@ public class MartianLand {
 	 * @param y Y coordinate
 	 */
 	public void removeHealth(int x, int y) {
-		this.healths.get(y).remove(x);
+		if (journal != null) {
+			journal.health(x, y, healthOrNone(x, y), MoveJournal.NO_HEALTH);
+		}
+		writeHealth(x, y, MoveJournal.NO_HEALTH);
 	}
 
 	/**
@@ -115,10 +208,10 @@ public class MartianLand {
 	 * @param v Health value
 	 */
 	public void putHealth(int x, int y, int v) {
-		if (!this.healths.containsKey(y)) {
-			this.healths.put(y, new HashMap<Integer, Integer>());
+		if (journal != null) {
+			journal.health(x, y, healthOrNone(x, y), v);
 		}
-		this.healths.get(y).put(x, v);
+		writeHealth(x, y, v);
 	}
 
 	/**
@@ -128,308 +221,596 @@ public class MartianLand {
 	 * @param direction Direction of movement
 	 */
 	public void moveHealth(MartianLandPossision posission, Direction direction) {
-		int health = getHealth(posission.get_x(), posission.get_y());
-		removeHealth(posission.get_x(), posission.get_y());
-		putHealth(posission.get_x() + direction.get_x(), posission.get_y() + direction.get_y(), health);
+		int toX = posission.get_x() + direction.get_x();
+		int toY = posission.get_y() + direction.get_y();
+		if (journal != null) {
+			journal.health(posission.get_x(), posission.get_y(),
+					healthOrNone(posission.get_x(), posission.get_y()), MoveJournal.NO_HEALTH);
+			journal.health(toX, toY, healthOrNone(toX, toY), this.healths.get(posission.get_x(), posission.get_y()));
+		}
+		int health = this.healths.get(posission.get_x(), posission.get_y());
+		writeHealth(posission.get_x(), posission.get_y(), MoveJournal.NO_HEALTH);
+		writeHealth(toX, toY, health);
 	}
 
 	/**
-	 * Gets the map data.
+	 * Gets health at a position for the journal.
 	 *
-	 * @return list of strings representing the map
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @return Health value, MoveJournal.NO_HEALTH if none is held
 	 */
-	public List<String> getLand() {
-		return this.land;
+	private int healthOrNone(int x, int y) {
+		return this.healths.contains(x, y) ? this.healths.get(x, y) : MoveJournal.NO_HEALTH;
 	}
 
 	/**
-	 * Prints the Martian land map to the console.
+	 * Starts or stops recording changes for undo and redo.
+	 *
+	 * @param journal journal to record changes in, null to stop recording
 	 */
-	public void show() {
-		System.out.println("Here is a layout of Martian land.");
-		System.out.println("");
-		for (String element : land) {
-			System.out.println(element);
-		}
-		System.out.println();
+	public void setJournal(MoveJournal journal) {
+		this.journal = journal;
 	}
 
 	/**
-	 * Checks if all rows have the same length.
-	 * 
-	 * @return true if all rows have same length, false otherwise
+	 * Gets the journal changes are recorded in.
+	 *
+	 * @return Journal, null if not recording
 	 */
-	public boolean isAllLenSame() {
-		int len = land.get(0).length();
-		for (String element : land) {
-			if (len != element.length()) {
-				return false;
-			}
-		}
-		return true;
+	public MoveJournal getJournal() {
+		return this.journal;
 	}
 
 	/**
-	 * Checks if first row contains only '#' symbols.
-	 * 
-	 * @return true if first row only contains '#', false otherwise
+	 * Sets a cell while undoing or redoing, without recording it.
+	 *
+	 * @param x      X coordinate
+	 * @param y      Y coordinate
+	 * @param symbol Symbol to set
 	 */
-	public boolean isFirstLowAllHashes() {
-		String lastLow = land.get(0);
+	void replayCell(int x, int y, char symbol) {
+		writeCell(x, y, symbol);
+	}
 
-		for (int i = 0; i < lastLow.length(); i++) {
-			if (lastLow.charAt(i) != '#') {
-				return false;
-			}
+	/**
+	 * Sets health while undoing or redoing, without recording it.
+	 *
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @param v Health value, MoveJournal.NO_HEALTH to remove it
+	 */
+	void replayHealth(int x, int y, int v) {
+		writeHealth(x, y, v);
+	}
+
+	/**
+	 * Adds behaviour points while undoing or redoing, without recording them.
+	 *
+	 * @param score Points to add
+	 */
+	void replayScore(int score) {
+		writeScore(behaviorScore + score);
+	}
+
+	/**
+	 * Sets the behaviour score while recovering from the write-ahead log.
+	 *
+	 * @param score Behaviour score
+	 */
+	void restoreBehaviorScore(int score) {
+		writeScore(score);
+	}
+
+	/**
+	 * Starts or stops logging changes to a write-ahead log.
+	 *
+	 * @param wal log to write changes to, null to stop logging
+	 */
+	public void setWriteAheadLog(WriteAheadLog wal) {
+		this.wal = wal;
+	}
+
+	/**
+	 * Finishes a step of the mission in the journal and the write-ahead log.
+	 */
+	public void endStep() {
+		if (journal != null) {
+			journal.endStep();
+		}
+		if (wal != null) {
+			wal.endStep();
 		}
-		return true;
 	}
 
 	/**
-	 * Checks if last row contains only '#' symbols.
-	 * 
-	 * @return true if last row only contains '#', false otherwise
+	 * Sets or removes health, logging it if a write-ahead log is set.
+	 *
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @param v Health value, MoveJournal.NO_HEALTH to remove it
 	 */
-	public boolean isLastLowAllHashes() {
-		String lastLow = land.get(land.size() - 1);
+	private void writeHealth(int x, int y, int v) {
+		if (wal != null) {
+			wal.health(x, y, v);
+		}
+		if (v == MoveJournal.NO_HEALTH) {
+			this.healths.remove(x, y);
+		} else {
+			this.healths.put(x, y, v);
+		}
+	}
 
-		for (int i = 0; i < lastLow.length(); i++) {
-			if (lastLow.charAt(i) != '#') {
-				return false;
-			}
+	/**
+	 * Sets the behaviour score, logging it if a write-ahead log is set.
+	 *
+	 * @param score Behaviour score
+	 */
+	private void writeScore(int score) {
+		if (wal != null) {
+			wal.score(score);
 		}
-		return true;
+		behaviorScore = score;
+	}
+
+	/**
+	 * Gets the map data.
+	 * The rows are built from the grid only when they are read.
+	 *
+	 * @return list of strings representing the map
+	 */
+	public List<String> getLand() {
+		return this.grid.asLines();
 	}
 
 	/**
-	 * Checks if start and end of each row is '#'.
+	 * Saves the Martian land map to file.
 	 *
-	 * @return true if head and tail of each row is '#', false otherwise
+	 * @param fileName file name to write
+	 * @throws IOException if IO error occurs
 	 */
-	public boolean isHeadAndTailHashes() {
-		for (String element : land) {
-			if ((element.charAt(0) != '#') || (element.charAt(element.length() - 1) != '#')) {
-				return false;
+	public void save(String fileName) throws IOException {
+		MartianMapSaver.save(grid, fileName);
+	}
+
+	/**
+	 * Saves the Martian land map to file in the compressed format.
+	 *
+	 * @param fileName file name to write
+	 * @throws IOException if IO error occurs
+	 */
+	public void saveCompressed(String fileName) throws IOException {
+		MartianMapSaver.saveCompressed(grid, fileName);
+	}
+
+	/**
+	 * Saves the Martian land with health values and behaviour score as a binary snapshot.
+	 *
+	 * @param fileName file name to write
+	 * @throws IOException if IO error occurs
+	 */
+	public void saveSnapshot(String fileName) throws IOException {
+		int[] health = new int[countLiving()];
+		int n = 0;
+		for (Entitys entitys : Entitys.values()) {
+			if (entitys.getHealth() > 0) {
+				PositionIndex index = getPositions(entitys);
+				for (int i = 0; i < index.size(); i++) {
+					health[n++] = healths.get(index.getX(i), index.getY(i));
+				}
 			}
 		}
-		return true;
+		MapSnapshot.save(grid, positions, behaviorScore, health, fileName);
 	}
 
 	/**
-	 * Checks if all symbols on map are valid entities.
-	 * 
-	 * @return true if only valid entities, false if unknown symbol found
-	 */
-	public boolean isAllEntityExist() {
-		for (String element : land) {
-			for (int i = 0; i < element.length(); i++) {
-				char c = element.charAt(i);
-				if ((c != Entitys.Rose.getSymbol())
-						&& (c != Entitys.Lily.getSymbol())
-						&& (c != Entitys.Eucalyptus.getSymbol())
-						&& (c != Entitys.Potato.getSymbol())
-						&& (c != Entitys.Tomato.getSymbol())
-						&& (c != Entitys.Onion.getSymbol())
-						&& (c != Entitys.Apple.getSymbol())
-						&& (c != Entitys.Banana.getSymbol())
-						&& (c != Entitys.Cow.getSymbol())
-						&& (c != Entitys.Sheep.getSymbol())
-						&& (c != Entitys.Dog.getSymbol())
-						&& (c != Entitys.Rock.getSymbol())
-						&& (c != Entitys.Mineral.getSymbol())
-						&& (c != Entitys.SpaceRobot.getSymbol())
-						&& (c != Entitys.SpaceRover.getSymbol())
-						&& (c != Entitys.Heebie.getSymbol())
-						&& (c != Entitys.Jeebie.getSymbol())
-						&& (c != '#')
-						&& (c != '.')) {
-					// System.out.println("not Entity symbol (" + c + ")");
-					return false;
-				}
+	 * Counts the entities that have health, dogs and Martian animals.
+	 *
+	 * @return Number of living entities on the map
+	 */
+	private int countLiving() {
+		int living = 0;
+		for (Entitys entitys : Entitys.values()) {
+			if (entitys.getHealth() > 0) {
+				living += counts[entitys.ordinal()];
 			}
 		}
-		return true;
+		return living;
 	}
 
 	/**
-	 * Calculates the total habitability score.
+	 * Prints the Martian land map to the console.
+	 * Called after every step, the renderer decides whether to draw.
+	 */
+	public void show() {
+		renderer.show();
+	}
+
+	/**
+	 * Gets the renderer that draws the map.
+	 *
+	 * @return Map renderer
+	 */
+	public MapRenderer getRenderer() {
+		return this.renderer;
+	}
+
+	/**
+	 * Prints the habitability status.
+	 * Counts and score are maintained as the map changes, so no scan is needed.
 	 */
 	public void showHabitabilityStatus() {
 		System.out.println("Habitability Status");
 		System.out.println("======================");
 
-		HashMap<Entity, Integer> map = new HashMap<>();
-
-		for (String element : land) {
-			for (int i = 0; i < element.length(); i++) {
-				char c = element.charAt(i);
-				Entity entity = getEntityBySymbol(c);
-				if (entity != null) {
-					map.put(entity, map.getOrDefault(entity, 0) + 1);
-				}
-			}
+		if (verify) {
+			verifyCounts();
 		}
 
-		if (map.isEmpty()) {
+		if (entityTotal == 0) {
 			System.out.println("No Record found.");
 			return;
 		}
 
-		List<Entity> order = Arrays.asList(
-				Entitys.Potato.getEntity(),
-				Entitys.Mineral.getEntity(),
-				Entitys.Sheep.getEntity(),
-				Entitys.Lily.getEntity(),
-				Entitys.Eucalyptus.getEntity(),
-				Entitys.Rose.getEntity(),
-				Entitys.Cow.getEntity(),
-				Entitys.Goat.getEntity(),
-				Entitys.Dog.getEntity(),
-				Entitys.Tomato.getEntity());
-
-		for (Entity entity : order) {
-			Integer count = map.get(entity);
-			if (count != null) {
-				System.out.println(entity.getName() + " = " + count);
+		for (Entitys entitys : STATUS_ORDER) {
+			int count = counts[entitys.ordinal()];
+			if (count > 0) {
+				System.out.println(entitys.getName() + " = " + count);
 			}
 		}
 
-		int score = 0;
-		for (java.util.Map.Entry<Entity, Integer> entry : map.entrySet()) {
-			score += entry.getValue() * entry.getKey().getScore();
+		System.out.println("");
+		System.out.println("Total Habitability Score: " + getHabitabilityScore());
+	}
+
+	/**
+	 * Gets the total habitability score.
+	 *
+	 * @return Score of all entities plus the behaviour score
+	 */
+	public int getHabitabilityScore() {
+		return landScore + behaviorScore;
+	}
+
+	/**
+	 * Takes a snapshot of the current habitability status.
+	 *
+	 * @return Snapshot of the counts and score
+	 */
+	public HabitabilitySnapshot getHabitabilitySnapshot() {
+		return new HabitabilitySnapshot(getHabitabilityScore(), counts);
+	}
+
+	/**
+	 * Records a habitability snapshot every given number of moves.
+	 *
+	 * @param recorder writer to record snapshots with, null to stop recording
+	 * @param interval number of moves between snapshots
+	 */
+	public void setRecorder(HabitabilityLogWriter recorder, int interval) {
+		this.recorder = recorder;
+		this.recordInterval = Math.max(1, interval);
+	}
+
+	/**
+	 * Gets the number of cells holding an entity.
+	 *
+	 * @param entitys Entity to count
+	 * @return Number of cells holding the entity
+	 */
+	public int getEntityCount(Entitys entitys) {
+		return counts[entitys.ordinal()];
+	}
+
+	/**
+	 * Turns cross-checking of the maintained counts on or off.
+	 *
+	 * @param verify true to scan the map on every status query
+	 */
+	public void setVerify(boolean verify) {
+		this.verify = verify;
+	}
+
+	/**
+	 * Adds a position to the index of an entity.
+	 *
+	 * @param entitys Entity at the position
+	 * @param x       X coordinate
+	 * @param y       Y coordinate
+	 */
+	private void addPosition(Entitys entitys, int x, int y) {
+		positions[entitys.ordinal()].add(x, y);
+		if (isMartianAnimal(entitys)) {
+			animals.add(x, y);
 		}
-		score += behaviorScore;
+	}
 
-		System.out.println("");
-		System.out.println("Total Habitability Score: " + score);
+	/**
+	 * Removes a position from the index of an entity.
+	 *
+	 * @param entitys Entity at the position
+	 * @param x       X coordinate
+	 * @param y       Y coordinate
+	 */
+	private void removePosition(Entitys entitys, int x, int y) {
+		positions[entitys.ordinal()].remove(x, y);
+		if (isMartianAnimal(entitys)) {
+			animals.remove(x, y);
+		}
+	}
+
+	/**
+	 * Moves a position in the index of an entity.
+	 *
+	 * @param entitys Entity at the position
+	 * @param x       X coordinate
+	 * @param y       Y coordinate
+	 * @param toX     new X coordinate
+	 * @param toY     new Y coordinate
+	 */
+	private void movePosition(Entitys entitys, int x, int y, int toX, int toY) {
+		positions[entitys.ordinal()].move(x, y, toX, toY);
+		if (isMartianAnimal(entitys)) {
+			animals.move(x, y, toX, toY);
+		}
+	}
+
+	/**
+	 * Checks if an entity is a Martian animal.
+	 *
+	 * @param entitys Entity to check
+	 * @return true if Heebie or Jeebie, false otherwise
+	 */
+	private static boolean isMartianAnimal(Entitys entitys) {
+		return entitys == Entitys.Heebie || entitys == Entitys.Jeebie;
+	}
+
+	/**
+	 * Gets the positions of an entity, ordered by row and then column.
+	 *
+	 * @param entitys Entity to look up
+	 * @return Position index of the entity
+	 */
+	public PositionIndex getPositions(Entitys entitys) {
+		return positions[entitys.ordinal()];
+	}
+
+	/**
+	 * Checks the maintained counts against a full scan of the map.
+	 *
+	 * @throws IllegalStateException if the counts do not match
+	 */
+	public void verifyCounts() {
+		GridCensus census = GridCensus.take(grid, parallel);
+		int total = 0;
+		int score = 0;
+		for (Entitys entitys : Entitys.values()) {
+			int count = census.getCount(entitys);
+			if (count != counts[entitys.ordinal()] || count != positions[entitys.ordinal()].size()) {
+				throw new IllegalStateException("Count of " + entitys.getName() + " is " + counts[entitys.ordinal()]
+						+ " but map has " + count);
+			}
+			total += count;
+			score += count * entitys.getEntity().getScore();
+		}
+		if (total != entityTotal || score != landScore) {
+			throw new IllegalStateException("Habitability score is " + landScore + " but map scores " + score);
+		}
 	}
 
 	/* for map */
 	public void showRobotsMap() {
-		HashMap<Integer/* index */, MartianLandPossision> map = getEntityMap(Entitys.SpaceRobot.getEntity());
-		final int size = map.size();
+		PositionIndex index = getPositions(Entitys.SpaceRobot);
+		final int size = index.size();
 		System.out.println("There are " + size + " Space Robot found. Select");
 
-		for (java.util.Map.Entry<Integer, MartianLandPossision> entry : map.entrySet()) {
+		for (int i = 0; i < size; i++) {
 			System.out
-					.println("[" + entry.getKey() + "] for Space Robot at position (" + entry.getValue().get_x() + ", "
-							+ entry.getValue().get_y() + ")");
+					.println("[" + (i + 1) + "] for Space Robot at position (" + index.getX(i) + ", "
+							+ index.getY(i) + ")");
 		}
 	}
 
 	public void showRoverMap() {
-		HashMap<Integer/* index */, MartianLandPossision> map = getEntityMap(Entitys.SpaceRover.getEntity());
-		final int size = map.size();
+		PositionIndex index = getPositions(Entitys.SpaceRover);
+		final int size = index.size();
 		System.out.println("There are " + size + " Space Rover found. Select");
 
-		for (java.util.Map.Entry<Integer, MartianLandPossision> entry : map.entrySet()) {
+		for (int i = 0; i < size; i++) {
 			System.out
-					.println("[" + entry.getKey() + "] for Space Rover at position (" + entry.getValue().get_x() + ", "
-							+ entry.getValue().get_y() + ")");
+					.println("[" + (i + 1) + "] for Space Rover at position (" + index.getX(i) + ", "
+							+ index.getY(i) + ")");
 		}
 	}
 
 	public void showMartianAnimals() {
-		ArrayList<Pair<Entity, MartianLandPossision>> map = getEntityMap(Entitys.Heebie.getEntity(),
-				Entitys.Jeebie.getEntity());
-		Collections.sort(map, new Comparator<Pair<Entity, MartianLandPossision>>() {
-			@Override
-			public int compare(Pair<Entity, MartianLandPossision> p1, Pair<Entity, MartianLandPossision> p2) {
-				if (p1.second.get_y() == p2.second.get_y()) {
-					return Integer.compare(p1.second.get_x(), p2.second.get_x());
-				} else {
-					return Integer.compare(p1.second.get_y(), p2.second.get_y());
-				}
-			}
-		});
-
-		int size = map.size();
+		int size = animals.size();
 
 		if (size > 0) {
 			System.out.println("There are " + size + " Martian animal found. Select");
-			int num = 1;
-			for (Pair<Entity, MartianLandPossision> pair : map) {
-				System.out.println("[" + num + "] for " + pair.first.getName().toUpperCase() + " at position ("
-						+ pair.second.get_x() + ", " + pair.second.get_y() + ")");
-				num++;
+			for (int i = 0; i < size; i++) {
+				int x = animals.getX(i);
+				int y = animals.getY(i);
+				Entity entity = getEntityBySymbol(grid.get(x, y));
+				System.out.println("[" + (i + 1) + "] for " + entity.getName().toUpperCase() + " at position ("
+						+ x + ", " + y + ")");
 			}
 		} else {
 			System.out.println("No Martian animal found to move.");
 		}
 	}
 
-	private HashMap<Integer/* index */, MartianLandPossision> getEntityMap(Entity entity) {
-		HashMap<Integer/* index */, MartianLandPossision> map = new HashMap<>();
-		int y = 0;
-		int index = 1;
-		for (String element : land) {
-			for (int x = 0; x < element.length(); x++) {
-				char c = element.charAt(x);
-				if (c == entity.getSymbol()) {
-					MartianLandPossision pos = new MartianLandPossision(x, y);
-					map.put(index, pos);
-					index++;
-				}
-			}
-			y++;
-		}
-		return map;
+	/**
+	 * Gets the number of robots on the map.
+	 * 
+	 * @return Number of robots
+	 */
+	public int getRobotCount() {
+		return getPositions(Entitys.SpaceRobot).size();
 	}
 
-	public class Pair<T, U> {
-		public final T first;
-		public final U second;
+	public int getRoverCount() {
+		return getPositions(Entitys.SpaceRover).size();
+	}
 
-		public Pair(T first, U second) {
-			this.first = first;
-			this.second = second;
+	/**
+	 * Finds a shortest path for the robot or rover at a position.
+	 * Robots only cross empty land, rovers also cross rocks and minerals.
+	 * The search tables are kept for the next search.
+	 *
+	 * @param unit position of the robot or rover
+	 * @param toX  X coordinate of the target
+	 * @param toY  Y coordinate of the target
+	 * @return Direction menu keys of each step, empty if already there,
+	 *         null if there is no robot or rover or the target cannot be reached
+	 */
+	public int[] findPath(MartianLandPossision unit, int toX, int toY) {
+		PathFinder.Unit kind = PathFinder.Unit.of(getSymbol(unit.get_x(), unit.get_y()));
+		if (kind == null) {
+			return null;
 		}
+		if (pathFinder == null) {
+			pathFinder = new PathFinder(this);
+		}
+		return pathFinder.find(kind, unit.get_x(), unit.get_y(), toX, toY);
 	}
 
-	// return list of all martian animals
-	private ArrayList<Pair<Entity, MartianLandPossision>> getEntityMap(Entity... entities) {
-		ArrayList<Pair<Entity, MartianLandPossision>> list = new ArrayList<>();
-		for (Entity entity : entities) {
-			int y = 0;
-			for (String landLine : land) {
-				for (int x = 0; x < landLine.length(); x++) {
-					if (landLine.charAt(x) == entity.getSymbol()) {
-						MartianLandPossision pos = new MartianLandPossision(x, y);
-						list.add(new Pair<>(entity, pos));
-					}
-				}
-				y++;
-			}
+	/**
+	 * Gets the distances to the nearest target of a kind, which are kept up
+	 * to date as the map changes from then on.
+	 * The first call fills the field with a search over the whole map.
+	 *
+	 * @param target kind of target
+	 * @return Distance field
+	 */
+	public DistanceField getDistanceField(DistanceField.Target target) {
+		if (fields[target.ordinal()] == null) {
+			fields[target.ordinal()] = new DistanceField(grid, target);
 		}
-		return list;
+		return fields[target.ordinal()];
 	}
 
 	/**
-	 * Gets the number of robots on the map.
-	 * 
-	 * @return Number of robots
+	 * Gets the number of columns of the map.
+	 *
+	 * @return Width of the map
 	 */
-	public int getRobotCount() {
-		HashMap<Integer/* index */, MartianLandPossision> map = getEntityMap(Entitys.SpaceRobot.getEntity());
-		return map.size();
+	public int getWidth() {
+		return grid.getWidth();
 	}
 
-	public int getRoverCount() {
-		HashMap<Integer/* index */, MartianLandPossision> map = getEntityMap(Entitys.SpaceRover.getEntity());
-		return map.size();
+	/**
+	 * Gets the number of rows of the map.
+	 *
+	 * @return Height of the map
+	 */
+	public int getHeight() {
+		return grid.getHeight();
+	}
+
+	/**
+	 * Checks if the map is read from its file a tile at a time.
+	 * Reading a tiled map changes which tiles are held, so it cannot be
+	 * read by several threads at once.
+	 *
+	 * @return true if the map is tiled
+	 */
+	public boolean isTiled() {
+		return grid instanceof TiledMartianGrid;
+	}
+
+	/**
+	 * Closes the files a tiled map is read from. Other maps hold no files.
+	 *
+	 * @throws IOException if IO error occurs
+	 */
+	public void close() throws IOException {
+		if (grid instanceof TiledMartianGrid) {
+			((TiledMartianGrid) grid).close();
+		}
 	}
 
 	public int getMartianAnimalCount() {
-		HashMap<Integer/* index */, MartianLandPossision> heebieMap = getEntityMap(Entitys.Heebie.getEntity());
-		HashMap<Integer/* index */, MartianLandPossision> jeebieMap = getEntityMap(Entitys.Jeebie.getEntity());
-		return heebieMap.size() + jeebieMap.size();
+		return animals.size();
+	}
+
+	/**
+	 * Copies the positions of every Martian animal, so that they can be moved
+	 * one after another without the moves changing the list.
+	 *
+	 * @param keys array to copy into, replaced if too short
+	 * @return Array holding getMartianAnimalCount() packed positions in order
+	 */
+	public long[] copyAnimalPositions(long[] keys) {
+		if (keys.length < animals.size()) {
+			keys = new long[animals.size()];
+		}
+		animals.writeKeys(LongBuffer.wrap(keys));
+		return keys;
+	}
+
+	/**
+	 * Moves a Martian animal one step by the rules of the animal menu.
+	 *
+	 * @param animal    position of the animal, not changed
+	 * @param direction direction to move in
+	 * @param report    true to print the fight with a dog
+	 * @return false if the animal could not move that way, true otherwise
+	 */
+	public boolean stepAnimal(MartianLandPossision animal, Direction direction, boolean report) {
+		return AnimalRules.step(this, animal, direction, report) != AnimalRules.Outcome.BLOCKED;
 	}
 
 	public void rewriteMapChar(int x, int y, char symbol) {
-		String landline = land.get(y);
-		StringBuilder new_landline = new StringBuilder(landline);
-		new_landline.setCharAt(x, symbol);
-		land.set(y, new_landline.toString());
+		if (journal != null) {
+			journal.cell(x, y, grid.get(x, y), symbol);
+		}
+		writeCell(x, y, symbol);
+	}
+
+	/**
+	 * Rewrites a cell, keeping counts, score and positions up to date
+	 * and logging it if a write-ahead log is set.
+	 *
+	 * @param x      X coordinate
+	 * @param y      Y coordinate
+	 * @param symbol New symbol
+	 */
+	private void writeCell(int x, int y, char symbol) {
+		if (wal != null) {
+			wal.cell(x, y, symbol);
+		}
+		Entitys before = Entitys.fromSymbol(grid.get(x, y));
+		if (before != null) {
+			removePosition(before, x, y);
+			counts[before.ordinal()]--;
+			entityTotal--;
+			landScore -= before.getEntity().getScore();
+		}
+		Entitys after = Entitys.fromSymbol(symbol);
+		if (after != null) {
+			addPosition(after, x, y);
+			counts[after.ordinal()]++;
+			entityTotal++;
+			landScore += after.getEntity().getScore();
+		}
+		grid.set(x, y, symbol);
+		renderer.markChanged(y);
+		updateFields(x, y);
+	}
+
+	/**
+	 * Repairs the distance fields after a cell has changed.
+	 *
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 */
+	private void updateFields(int x, int y) {
+		for (DistanceField field : fields) {
+			if (field != null) {
+				field.update(x, y);
+			}
+		}
 	}
 
 	/**
@@ -439,88 +820,153 @@ public class MartianLand {
 	 * @param direction Direction to move
 	 */
 	public void move(MartianLandPossision position, Direction direction) {
-		char from_symbol = getSymbol(position, new Direction(0));
-		rewriteMapChar(position.get_x(), position.get_y(), '.');
-		rewriteMapChar(position.get_x() + direction.get_x(), position.get_y() + direction.get_y(), from_symbol);
+		int x = position.get_x();
+		int y = position.get_y();
+		int toX = x + direction.get_x();
+		int toY = y + direction.get_y();
+		char from_symbol = grid.get(x, y);
+		char to_symbol = grid.get(toX, toY);
+		Entitys mover = Entitys.fromSymbol(from_symbol);
+		if (mover == null || Entitys.fromSymbol(to_symbol) != null) {
+			rewriteMapChar(x, y, '.');
+			rewriteMapChar(toX, toY, from_symbol);
+		} else {
+			// nothing is taken over, so counts and scores stay and only the position moves
+			if (journal != null) {
+				journal.cell(x, y, from_symbol, '.');
+				journal.cell(toX, toY, to_symbol, from_symbol);
+			}
+			if (wal != null) {
+				wal.cell(x, y, '.');
+				wal.cell(toX, toY, from_symbol);
+			}
+			movePosition(mover, x, y, toX, toY);
+			grid.set(x, y, '.');
+			updateFields(x, y);
+			grid.set(toX, toY, from_symbol);
+			updateFields(toX, toY);
+			renderer.markChanged(y);
+			renderer.markChanged(toY);
+		}
+		if (recorder != null && ++moves % recordInterval == 0) {
+			recorder.record(new HabitabilitySnapshot(getHabitabilityScore(), counts, true));
+		}
 	}
 
-	public void unMove(MartianLandPossision position, Direction direction, char to_symbol) {
-		char now_symbol = getSymbol(position, direction);
-		rewriteMapChar(position.get_x(), position.get_y(), now_symbol);
-		rewriteMapChar(position.get_x() + direction.get_x(), position.get_y() + direction.get_y(), to_symbol);
-	}
 
 	public MartianLandPossision getRobotPosition(int key) {
-		HashMap<Integer/* index */, MartianLandPossision> map = getEntityMap(Entitys.SpaceRobot.getEntity());
-		return map.get(key);
+		return getPosition(getPositions(Entitys.SpaceRobot), key);
 	}
 
-	public char getSymbol(MartianLandPossision position, Direction direction) {
+	/**
+	 * Checks if the cell in a direction from a position lies on the map.
+	 *
+	 * @param position  Current position
+	 * @param direction Direction to look in
+	 * @return true if the cell is on the map, false otherwise
+	 */
+	public boolean isOnMap(MartianLandPossision position, Direction direction) {
+		return grid.contains(position.get_x() + direction.get_x(), position.get_y() + direction.get_y());
+	}
 
-		List<String> land = getLand();
-		return land.get(position.get_y() + direction.get_y()).charAt(position.get_x() + direction.get_x());
+	public char getSymbol(MartianLandPossision position, Direction direction) {
+		return grid.get(position.get_x() + direction.get_x(), position.get_y() + direction.get_y());
 	}
 
 	public char getSymbol(Direction action) {
-		List<String> land = getLand();
-		return land.get(action.get_y()).charAt(action.get_x());
+		return grid.get(action.get_x(), action.get_y());
+	}
+
+	/**
+	 * Gets the symbol at a cell.
+	 *
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @return Symbol at the cell, the boundary symbol if it lies off the map
+	 */
+	public char getSymbol(int x, int y) {
+		return grid.contains(x, y) ? grid.get(x, y) : Entitys.BOUNDARY;
 	}
 
 	public void plant(int plantInput, Direction action) {
-		Entitys entity = null;
+		Entitys entity = getPlant(plantInput);
 		String article = "A";
+		if (entity == Entitys.Onion || entity == Entitys.Apple) {
+			article += "n";
+		}
+
+		rewriteMapChar(action.get_x(), action.get_y(), entity.getSymbol());
+		System.out.println(article + " " + entity.getPascalCase() + " has been planted.");
+
+	}
+
+	public void cattle(int cattleInput, Direction action) {
+		Entitys entity = getCattle(cattleInput);
+		rewriteMapChar(action.get_x(), action.get_y(), entity.getSymbol());
+		System.out.println("A " + entity.getName() + " has been added.");
+	}
+
+	/**
+	 * Resolves a fight between a Martian animal and the dog it moves onto.
+	 * See AnimalRules.fight.
+	 *
+	 * @param animal    Position of the Martian animal
+	 * @param direction Direction of the dog from the animal
+	 * @param report    true to print every attack
+	 * @return true if the dog died, false if the animal died
+	 */
+	public boolean fightDog(MartianLandPossision animal, Direction direction, boolean report) {
+		return AnimalRules.fight(this, animal, direction, report);
+	}
+
+	/**
+	 * Gets the plant chosen in the plant menu.
+	 *
+	 * @param plantInput Menu key, 1 to 8
+	 * @return Plant entity, null if key is out of range
+	 */
+	public static Entitys getPlant(int plantInput) {
 		switch (plantInput) {
 			case 1:
-				entity = Entitys.Potato;
-				break;
+				return Entitys.Potato;
 			case 2:
-				entity = Entitys.Tomato;
-				break;
+				return Entitys.Tomato;
 			case 3:
-				entity = Entitys.Onion;
-				article += "n";
-				break;
+				return Entitys.Onion;
 			case 4:
-				entity = Entitys.Apple;
-				article += "n";
-				break;
+				return Entitys.Apple;
 			case 5:
-				entity = Entitys.Banana;
-				break;
+				return Entitys.Banana;
 			case 6:
-				entity = Entitys.Lily;
-				break;
+				return Entitys.Lily;
 			case 7:
-				entity = Entitys.Rose;
-				break;
+				return Entitys.Rose;
 			case 8:
-				entity = Entitys.Eucalyptus;
-				break;
+				return Entitys.Eucalyptus;
+			default:
+				return null;
 		}
-
-		rewriteMapChar(action.get_x(), action.get_y(), entity.getSymbol());
-		System.out.println(article + " " + entity.getPascalCase() + " has been planted.");
-
 	}
 
-	public void cattle(int cattleInput, Direction action) {
-		Entitys entity = null;
+	/**
+	 * Gets the cattle chosen in the cattle menu.
+	 *
+	 * @param cattleInput Menu key, 1 to 4
+	 * @return Cattle entity, null if key is out of range
+	 */
+	public static Entitys getCattle(int cattleInput) {
 		switch (cattleInput) {
 			case 1:
-				entity = Entitys.Goat;
-				break;
+				return Entitys.Goat;
 			case 2:
-				entity = Entitys.Sheep;
-				break;
+				return Entitys.Sheep;
 			case 3:
-				entity = Entitys.Cow;
-				break;
+				return Entitys.Cow;
 			case 4:
-				entity = Entitys.Dog;
-				break;
+				return Entitys.Dog;
+			default:
+				return null;
 		}
-		rewriteMapChar(action.get_x(), action.get_y(), entity.getSymbol());
-		System.out.println("A " + entity.getName() + " has been added.");
 	}
 
 	/**
@@ -530,92 +976,36 @@ public class MartianLand {
 	 * @return Entity instance if found, null otherwise
 	 */
 	public Entity getEntityBySymbol(char symbol) {
-		Entity entity = null;
-		if (symbol == Entitys.Apple.getSymbol()) {
-			entity = Entitys.Apple.getEntity();
-		}
-		if (symbol == Entitys.Banana.getSymbol()) {
-			entity = Entitys.Banana.getEntity();
-		}
-		if (symbol == Entitys.Cow.getSymbol()) {
-			entity = Entitys.Cow.getEntity();
-		}
-		if (symbol == Entitys.Dog.getSymbol()) {
-			entity = Entitys.Dog.getEntity();
-		}
-		if (symbol == Entitys.Eucalyptus.getSymbol()) {
-			entity = Entitys.Eucalyptus.getEntity();
-		}
-		if (symbol == Entitys.Goat.getSymbol()) {
-			entity = Entitys.Goat.getEntity();
-		}
-		if (symbol == Entitys.Heebie.getSymbol()) {
-			entity = Entitys.Heebie.getEntity();
-		}
-		if (symbol == Entitys.Jeebie.getSymbol()) {
-			entity = Entitys.Jeebie.getEntity();
-		}
-		if (symbol == Entitys.Lily.getSymbol()) {
-			entity = Entitys.Lily.getEntity();
-		}
-		if (symbol == Entitys.Mineral.getSymbol()) {
-			entity = Entitys.Mineral.getEntity();
-		}
-		if (symbol == Entitys.Onion.getSymbol()) {
-			entity = Entitys.Onion.getEntity();
-		}
-		if (symbol == Entitys.Potato.getSymbol()) {
-			entity = Entitys.Potato.getEntity();
-		}
-		if (symbol == Entitys.Rock.getSymbol()) {
-			entity = Entitys.Rock.getEntity();
-		}
-		if (symbol == Entitys.Rose.getSymbol()) {
-			entity = Entitys.Rose.getEntity();
-		}
-		if (symbol == Entitys.Sheep.getSymbol()) {
-			entity = Entitys.Sheep.getEntity();
-		}
-		if (symbol == Entitys.SpaceRobot.getSymbol()) {
-			entity = Entitys.SpaceRobot.getEntity();
-		}
-		if (symbol == Entitys.SpaceRover.getSymbol()) {
-			entity = Entitys.SpaceRover.getEntity();
-		}
-		if (symbol == Entitys.Tomato.getSymbol()) {
-			entity = Entitys.Tomato.getEntity();
-		}
-
-		return entity;
+		Entitys entitys = Entitys.fromSymbol(symbol);
+		return entitys == null ? null : entitys.getEntity();
 	}
 
 	public MartianLandPossision getRooerPosition(int key) {
-		HashMap<Integer/* index */, MartianLandPossision> map = getEntityMap(Entitys.SpaceRover.getEntity());
-		return map.get(key);
+		return getPosition(getPositions(Entitys.SpaceRover), key);
 	}
 
 	public MartianLandPossision getAnimal(int key) {
-		ArrayList<Pair<Entity, MartianLandPossision>> map = getEntityMap(Entitys.Heebie.getEntity(),
-				Entitys.Jeebie.getEntity());
-		Collections.sort(map, new Comparator<Pair<Entity, MartianLandPossision>>() {
-			@Override
-			public int compare(Pair<Entity, MartianLandPossision> p1, Pair<Entity, MartianLandPossision> p2) {
-				if (p1.second.get_y() == p2.second.get_y()) {
-					return Integer.compare(p1.second.get_x(), p2.second.get_x());
-				} else {
-					return Integer.compare(p1.second.get_y(), p2.second.get_y());
-				}
-			}
-		});
-		// Return the MartianLandPossision based on the key, adjusting for 1-indexing
-		if (key >= 1 && key <= map.size()) {
-			return map.get(key - 1).second;
-		} else {
-			return null; // or throw an exception
+		return getPosition(animals, key);
+	}
+
+	/**
+	 * Gets a position by its menu key.
+	 *
+	 * @param index Position index to read
+	 * @param key   Menu key counted from 1
+	 * @return Position, null if key is out of range
+	 */
+	private MartianLandPossision getPosition(PositionIndex index, int key) {
+		if (key >= 1 && key <= index.size()) {
+			return index.get(key - 1);
 		}
+		return null;
 	}
 
 	public void addBehaviorScore(int score) {
-		behaviorScore += score;
+		if (journal != null) {
+			journal.score(score);
+		}
+		writeScore(behaviorScore + score);
 	}
 }
@@ -0,0 +1,697 @@
+/**
+ * This class loads a Martian land map file straight into a grid.
+ * The file is memory-mapped and split into blocks of rows, and each
+ * block is copied and validated in one pass on its own core.
+ * Maps saved in the compressed format are decoded run by run instead.
+ *
+ * @author Soma Hayasaka,hayasakas@student.unimelb.edu.au,1396301
+ *
+ */
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32C;
+
+import entities.Entitys;
+
+public class MartianMapLoader {
+	/** Bytes of the file mapped and checked by one task */
+	private static final long BLOCK_BYTES = 16L << 20;
+
+	/** Row is valid */
+	private static final int ROW_OK = 0;
+	/** Row holds an unknown symbol */
+	private static final int ROW_UNKNOWN = 1;
+	/** Row has a wrong length or boundary */
+	private static final int ROW_INVALID = 2;
+
+	/**
+	 * The worst problem found in part of a map and where it was first seen.
+	 */
+	private static final class Fault {
+		/** No problem found */
+		static final Fault NONE = new Fault(ROW_OK, -1, -1);
+
+		final int status;
+		final int row;
+		final int column;
+
+		Fault(int status, int row, int column) {
+			this.status = status;
+			this.row = row;
+			this.column = column;
+		}
+
+		/**
+		 * Picks the fault to report, the worse one or else the earlier one.
+		 *
+		 * @param other fault found in a later part of the map
+		 * @return fault to report
+		 */
+		Fault merge(Fault other) {
+			if (other.status > this.status) {
+				return other;
+			}
+			return this;
+		}
+
+		/**
+		 * Throws the exception matching this fault.
+		 *
+		 * @throws InvalidFileException   if a row has a wrong length or boundary
+		 * @throws UnknownEntityException if an unknown symbol was found
+		 */
+		void raise() throws InvalidFileException, UnknownEntityException {
+			if (status == ROW_INVALID) {
+				throw invalid(row, column);
+			}
+			if (status == ROW_UNKNOWN) {
+				throw new UnknownEntityException("An unknown items found in martian land. aborting mission.", row,
+						column);
+			}
+		}
+	}
+
+	/**
+	 * Loads a Martian land map from file, using all cores.
+	 *
+	 * @param fileName file name to read
+	 * @return Martian land map
+	 * @throws FileNotFoundException  if file not found
+	 * @throws InvalidFileException   if file content is invalid
+	 * @throws UnknownEntityException if unknown entity found
+	 * @throws IOException            if IO error occurs
+	 */
+	public static MartianLand load(String fileName)
+			throws FileNotFoundException, InvalidFileException, UnknownEntityException, IOException {
+		return load(fileName, true);
+	}
+
+	/**
+	 * Loads a Martian land map from file.
+	 *
+	 * @param fileName file name to read
+	 * @param parallel true to validate and count row ranges on the fork-join pool
+	 * @return Martian land map
+	 * @throws FileNotFoundException  if file not found
+	 * @throws InvalidFileException   if file content is invalid
+	 * @throws UnknownEntityException if unknown entity found
+	 * @throws IOException            if IO error occurs
+	 */
+	public static MartianLand load(String fileName, boolean parallel)
+			throws FileNotFoundException, InvalidFileException, UnknownEntityException, IOException {
+		return load(fileName, parallel, false);
+	}
+
+	/**
+	 * Loads a Martian land map from file.
+	 *
+	 * @param fileName file name to read
+	 * @param parallel true to validate and count row ranges on the fork-join pool
+	 * @param sparse   true to hold the map in a sparse grid
+	 * @return Martian land map
+	 * @throws FileNotFoundException  if file not found
+	 * @throws InvalidFileException   if file content is invalid
+	 * @throws UnknownEntityException if unknown entity found
+	 * @throws IOException            if IO error occurs
+	 */
+	public static MartianLand load(String fileName, boolean parallel, boolean sparse)
+			throws FileNotFoundException, InvalidFileException, UnknownEntityException, IOException {
+		return new MartianLand(loadGrid(fileName, parallel, sparse), parallel);
+	}
+
+	/**
+	 * Loads and validates a Martian land map file into a grid, using all cores.
+	 *
+	 * @param fileName file name to read
+	 * @return grid holding the map
+	 * @throws FileNotFoundException  if file not found
+	 * @throws InvalidFileException   if file content is invalid
+	 * @throws UnknownEntityException if unknown entity found
+	 * @throws IOException            if IO error occurs
+	 */
+	public static MartianGrid loadGrid(String fileName)
+			throws FileNotFoundException, InvalidFileException, UnknownEntityException, IOException {
+		return loadGrid(fileName, true);
+	}
+
+	/**
+	 * Loads and validates a Martian land map file into a grid.
+	 *
+	 * @param fileName file name to read
+	 * @param parallel true to validate blocks of rows on the fork-join pool
+	 * @return grid holding the map
+	 * @throws FileNotFoundException  if file not found
+	 * @throws InvalidFileException   if file content is invalid
+	 * @throws UnknownEntityException if unknown entity found
+	 * @throws IOException            if IO error occurs
+	 */
+	public static MartianGrid loadGrid(String fileName, boolean parallel)
+			throws FileNotFoundException, InvalidFileException, UnknownEntityException, IOException {
+		return loadGrid(fileName, parallel, false);
+	}
+
+	/**
+	 * Loads and validates a Martian land map file into a grid.
+	 *
+	 * @param fileName file name to read
+	 * @param parallel true to validate blocks of rows on the fork-join pool
+	 * @param sparse   true to hold the map in a sparse grid
+	 * @return grid holding the map
+	 * @throws FileNotFoundException  if file not found
+	 * @throws InvalidFileException   if file content is invalid
+	 * @throws UnknownEntityException if unknown entity found
+	 * @throws IOException            if IO error occurs
+	 */
+	public static MartianGrid loadGrid(String fileName, boolean parallel, boolean sparse)
+			throws FileNotFoundException, InvalidFileException, UnknownEntityException, IOException {
+		return readGrid(fileName, parallel, sparse, 0);
+	}
+
+	/**
+	 * Loads a Martian land map that is read from its file a tile at a time.
+	 *
+	 * @param fileName file name to read
+	 * @param budget   bytes of tiles to hold in memory
+	 * @return Martian land map
+	 * @throws FileNotFoundException  if file not found
+	 * @throws InvalidFileException   if file content is invalid
+	 * @throws UnknownEntityException if unknown entity found
+	 * @throws IOException            if IO error occurs
+	 */
+	public static MartianLand loadTiled(String fileName, long budget)
+			throws FileNotFoundException, InvalidFileException, UnknownEntityException, IOException {
+		// a tiled grid is read by one thread at a time
+		return new MartianLand(readGrid(fileName, true, false, budget), false);
+	}
+
+	/**
+	 * Validates a Martian land map file and loads it into a grid.
+	 * A compressed map cannot be read a tile at a time and is held in a sparse grid instead.
+	 *
+	 * @param fileName file name to read
+	 * @param parallel true to validate blocks of rows on the fork-join pool
+	 * @param sparse   true to hold the map in a sparse grid
+	 * @param budget   bytes of tiles to hold in memory, 0 to hold the whole map
+	 * @return grid holding the map
+	 * @throws FileNotFoundException  if file not found
+	 * @throws InvalidFileException   if file content is invalid
+	 * @throws UnknownEntityException if unknown entity found
+	 * @throws IOException            if IO error occurs
+	 */
+	private static MartianGrid readGrid(String fileName, boolean parallel, boolean sparse, long budget)
+			throws FileNotFoundException, InvalidFileException, UnknownEntityException, IOException {
+		File file = new File(fileName);
+
+		if (!file.exists()) {
+			throw new FileNotFoundException("File Not Found, aborting mission.");
+		}
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			final long size = channel.size();
+			if (size == 0) {
+				throw invalid(0, 0);
+			}
+
+			MappedByteBuffer head = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					Math.min(size, Integer.MAX_VALUE));
+			if (size >= 4 && head.getInt(0) == MartianMapSaver.COMPRESSED_MAGIC) {
+				return loadCompressed(head, size, sparse || budget > 0);
+			}
+			final boolean tiled = budget > 0;
+
+			// rows nearly always share the first line's ending, so each block can find its rows by arithmetic
+			Rows rows = uniformRows(head, size);
+			MartianGrid grid = null;
+			Fault fault = Fault.NONE;
+			if (rows != null) {
+				grid = createGrid(rows, tiled, sparse);
+				fault = loadBlocks(channel, size, grid, rows, parallel);
+			}
+			if (rows == null || fault.status == ROW_INVALID) {
+				// a line ending differs from the first one, or a row is wrong,
+				// so find every row by its own line ending as BufferedReader.readLine() would
+				grid = null;
+				rows = scanRows(channel, size);
+				grid = createGrid(rows, tiled, sparse);
+				fault = loadBlocks(channel, size, grid, rows, parallel);
+			}
+			fault.raise();
+			if (tiled) {
+				return new TiledMartianGrid(file.toPath(), rows.width, rows.height, rows.stride, rows.starts, budget);
+			}
+			return grid;
+		}
+	}
+
+	/**
+	 * Where the rows of a map file lie.
+	 */
+	private static final class Rows {
+		/** Number of cells in a row */
+		final int width;
+		/** Number of rows */
+		final int height;
+		/** Bytes taken by one row and its line ending, or the most a row can take if the endings differ */
+		final long stride;
+		/** Bytes taken by a line ending, 0 if the endings differ */
+		final int eol;
+		/** True if the last row ends with a line ending */
+		final boolean trailingEol;
+		/** Offset of each row in the file, null if every row takes stride bytes */
+		final long[] starts;
+
+		Rows(int width, int height, long stride, int eol, boolean trailingEol, long[] starts) {
+			this.width = width;
+			this.height = height;
+			this.stride = stride;
+			this.eol = eol;
+			this.trailingEol = trailingEol;
+			this.starts = starts;
+		}
+
+		/**
+		 * Gets the offset of a row in the file.
+		 *
+		 * @param y row
+		 * @return Offset of the first cell of the row
+		 */
+		long start(int y) {
+			return starts == null ? y * stride : starts[y];
+		}
+	}
+
+	/**
+	 * Works out where the rows lie from the first line, assuming every row has its length and line ending.
+	 *
+	 * @param head mapped start of the file
+	 * @param size size of the file in bytes
+	 * @return where the rows lie, null if the file size does not fit that layout
+	 */
+	private static Rows uniformRows(MappedByteBuffer head, long size) {
+		int newline = -1;
+		for (int i = 0; i < head.limit(); i++) {
+			byte b = head.get(i);
+			if (b == '\n' || b == '\r') {
+				newline = i;
+				break;
+			}
+		}
+		final int width;
+		final int eol;
+		if (newline < 0) {
+			if (size > Integer.MAX_VALUE) {
+				return null;
+			}
+			width = (int) size;
+			eol = 0;
+		} else if (head.get(newline) == '\n') {
+			width = newline;
+			eol = 1;
+		} else if (newline + 1 < head.limit() && head.get(newline + 1) == '\n') {
+			width = newline;
+			eol = 2;
+		} else {
+			// a line ending in a lone carriage return
+			return null;
+		}
+		if (width == 0) {
+			return null;
+		}
+
+		// the last line ending is optional
+		final long stride = (long) width + eol;
+		if (eol == 0) {
+			return new Rows(width, 1, stride, eol, false, null);
+		}
+		if (size % stride == 0 && size / stride <= Integer.MAX_VALUE) {
+			return new Rows(width, (int) (size / stride), stride, eol, true, null);
+		}
+		if ((size + eol) % stride == 0 && (size + eol) / stride <= Integer.MAX_VALUE) {
+			return new Rows(width, (int) ((size + eol) / stride), stride, eol, false, null);
+		}
+		return null;
+	}
+
+	/**
+	 * Finds every row of a map file by its own line ending, a line feed, a carriage return or both,
+	 * and checks that each row is as long as the first.
+	 *
+	 * @param channel channel of the map file
+	 * @param size    size of the map file in bytes
+	 * @return where the rows lie
+	 * @throws InvalidFileException if a row has a different length
+	 * @throws IOException          if IO error occurs
+	 */
+	private static Rows scanRows(FileChannel channel, long size) throws InvalidFileException, IOException {
+		long[] starts = new long[16];
+		int width = -1;
+		int row = 0;
+		long column = 0;
+		long lineStart = 0;
+		boolean afterCr = false;
+		for (long from = 0; from < size; from += BLOCK_BYTES) {
+			MappedByteBuffer block = channel.map(FileChannel.MapMode.READ_ONLY, from,
+					Math.min(BLOCK_BYTES, size - from));
+			for (int i = 0; i < block.limit(); i++) {
+				byte b = block.get(i);
+				if (afterCr) {
+					afterCr = false;
+					if (b == '\n') {
+						lineStart = from + i + 1;
+						continue;
+					}
+				}
+				if (b != '\n' && b != '\r') {
+					column++;
+					continue;
+				}
+				width = endRow(width, row, column);
+				if (row == starts.length) {
+					starts = Arrays.copyOf(starts, row * 2);
+				}
+				starts[row++] = lineStart;
+				column = 0;
+				lineStart = from + i + 1;
+				afterCr = b == '\r';
+			}
+		}
+		if (lineStart < size) {
+			// the last row has no line ending
+			width = endRow(width, row, column);
+			if (row == starts.length) {
+				starts = Arrays.copyOf(starts, row + 1);
+			}
+			starts[row++] = lineStart;
+		}
+		return new Rows(width, row, width + 2L, 0, false, starts);
+	}
+
+	/**
+	 * Checks the length of a row found by scanning.
+	 *
+	 * @param width  width of the map, -1 for the first row
+	 * @param row    row that ended
+	 * @param length number of cells in the row
+	 * @return width of the map
+	 * @throws InvalidFileException if the row is empty or its length differs from the first row
+	 */
+	private static int endRow(int width, int row, long length) throws InvalidFileException {
+		if (row == Integer.MAX_VALUE) {
+			throw tooLarge();
+		}
+		if (width < 0) {
+			if (length == 0) {
+				throw invalid(0, 0);
+			}
+			if (length > Integer.MAX_VALUE) {
+				throw invalid(0, Integer.MAX_VALUE);
+			}
+			return (int) length;
+		}
+		if (length != width) {
+			throw invalid(row, (int) Math.min(length, width));
+		}
+		return width;
+	}
+
+	/**
+	 * Creates the grid a map is copied into.
+	 *
+	 * @param rows   where the rows lie
+	 * @param tiled  true if the map is read a tile at a time, and so needs no grid
+	 * @param sparse true to hold the map in a sparse grid
+	 * @return grid to fill, null for a tiled map
+	 * @throws InvalidFileException if the map is too large to hold
+	 */
+	private static MartianGrid createGrid(Rows rows, boolean tiled, boolean sparse) throws InvalidFileException {
+		if (tiled) {
+			// a tiled grid reads its cells from the file later, so rows are only checked
+			return null;
+		}
+		if (!MartianGrid.fits(rows.width, rows.height, sparse)) {
+			throw tooLarge();
+		}
+		return MartianGrid.create(rows.width, rows.height, sparse);
+	}
+
+	/**
+	 * Validates every row of a map file and copies them into a grid, a block of rows at a time.
+	 *
+	 * @param channel  channel of the map file
+	 * @param size     size of the map file in bytes
+	 * @param grid     grid to fill, null to only check the rows
+	 * @param rows     where the rows lie
+	 * @param parallel true to validate blocks of rows on the fork-join pool
+	 * @return earliest fault of the worst kind found
+	 * @throws IOException if IO error occurs
+	 */
+	private static Fault loadBlocks(FileChannel channel, long size, MartianGrid grid, Rows rows, boolean parallel)
+			throws IOException {
+		final int rowsPerBlock = (int) Math.max(1, Math.min(rows.height, BLOCK_BYTES / rows.stride));
+		final int blocks = (rows.height + rowsPerBlock - 1) / rowsPerBlock;
+		try {
+			// blocks are merged in row order, so the earliest fault of the worst kind wins
+			IntStream range = IntStream.range(0, blocks);
+			if (parallel) {
+				range = range.parallel();
+			}
+			return range.mapToObj(block -> loadBlock(channel, size, grid, rows, block * rowsPerBlock,
+					(int) Math.min(rows.height, (long) (block + 1) * rowsPerBlock))).reduce(Fault.NONE, Fault::merge);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Validates map rows and packs them into a grid.
+	 * Length, boundary and symbols are checked in the same pass that copies the cells.
+	 *
+	 * @param land list of strings representing the map
+	 * @return grid holding the map
+	 * @throws InvalidFileException   if map data is invalid
+	 * @throws UnknownEntityException if unknown symbol is found
+	 */
+	public static MartianGrid toGrid(List<String> land) throws InvalidFileException, UnknownEntityException {
+		if (land.isEmpty() || land.get(0).isEmpty()) {
+			throw invalid(0, 0);
+		}
+		final int width = land.get(0).length();
+		final int height = land.size();
+		MartianGrid grid = new MartianGrid(width, height);
+		Fault fault = Fault.NONE;
+		for (int y = 0; y < height; y++) {
+			String line = land.get(y);
+			if (line.length() != width) {
+				throw invalid(y, Math.min(line.length(), width));
+			}
+			for (int x = 0; x < width; x++) {
+				char c = line.charAt(x);
+				int status = checkCell(c, x, y, width, height);
+				if (status == ROW_INVALID) {
+					throw invalid(y, x);
+				}
+				if (status == ROW_UNKNOWN && fault == Fault.NONE) {
+					fault = new Fault(status, y, x);
+				}
+				grid.set(x, y, c);
+			}
+		}
+		fault.raise();
+		return grid;
+	}
+
+	/**
+	 * Checks one cell of the map.
+	 *
+	 * @param c      symbol of the cell
+	 * @param x      X coordinate
+	 * @param y      Y coordinate
+	 * @param width  width of the map
+	 * @param height height of the map
+	 * @return ROW_OK, ROW_UNKNOWN or ROW_INVALID
+	 */
+	private static int checkCell(int c, int x, int y, int width, int height) {
+		if (c == '\n' || c == '\r') {
+			// a shorter row shifted the rest of the file
+			return ROW_INVALID;
+		}
+		if ((y == 0 || y == height - 1 || x == 0 || x == width - 1) && c != Entitys.BOUNDARY) {
+			return ROW_INVALID;
+		}
+		if (!Entitys.isMapSymbol((char) c)) {
+			return ROW_UNKNOWN;
+		}
+		return ROW_OK;
+	}
+
+	/**
+	 * Decodes and validates a map saved in the compressed format.
+	 * Each row is a list of runs, a symbol followed by its length as a varint,
+	 * and a CRC-32C of the rows follows the last row.
+	 *
+	 * @param file   mapped file
+	 * @param size   size of the file in bytes
+	 * @param sparse true to hold the map in a sparse grid
+	 * @return grid holding the map
+	 * @throws InvalidFileException   if file content is invalid
+	 * @throws UnknownEntityException if unknown entity found
+	 */
+	private static MartianGrid loadCompressed(MappedByteBuffer file, long size, boolean sparse)
+			throws InvalidFileException, UnknownEntityException {
+		if (size > Integer.MAX_VALUE) {
+			throw tooLarge();
+		}
+		if (size < 20 || file.getInt(4) != MartianMapSaver.COMPRESSED_VERSION) {
+			throw invalid(0, 0);
+		}
+		final int width = file.getInt(8);
+		final int height = file.getInt(12);
+		if (width <= 0 || height <= 0) {
+			throw invalid(0, 0);
+		}
+		if (!MartianGrid.fits(width, height, sparse)) {
+			throw tooLarge();
+		}
+		ByteBuffer rows = file.slice(16, (int) size - 20);
+		CRC32C crc = new CRC32C();
+		crc.update(rows.duplicate());
+		if ((int) crc.getValue() != file.getInt((int) size - 4)) {
+			throw invalid(0, 0);
+		}
+
+		MartianGrid grid = MartianGrid.create(width, height, sparse);
+		byte[] row = new byte[width];
+		Fault fault = Fault.NONE;
+		try {
+			for (int y = 0; y < height; y++) {
+				int x = 0;
+				while (x < width) {
+					char c = (char) (rows.get() & 0xff);
+					int run = readVarint(rows);
+					if (run <= 0 || run > width - x) {
+						throw invalid(y, x);
+					}
+					// a run is checked once at its ends, the symbol is the same throughout
+					int status = checkCell(c, x, y, width, height);
+					if (status == ROW_INVALID) {
+						throw invalid(y, x);
+					}
+					if (checkCell(c, x + run - 1, y, width, height) == ROW_INVALID) {
+						throw invalid(y, x + run - 1);
+					}
+					if (status == ROW_UNKNOWN && fault == Fault.NONE) {
+						fault = new Fault(status, y, x);
+					}
+					Arrays.fill(row, x, x + run, (byte) c);
+					x += run;
+				}
+				grid.setRow(y, ByteBuffer.wrap(row), 0);
+			}
+		} catch (BufferUnderflowException e) {
+			throw invalid(height - 1, width);
+		}
+		if (rows.hasRemaining()) {
+			throw invalid(height - 1, width);
+		}
+		fault.raise();
+		return grid;
+	}
+
+	/**
+	 * Reads a run length written as a varint, seven bits per byte, low bits first.
+	 *
+	 * @param buffer buffer to read from
+	 * @return the run length, -1 if it does not fit in an int
+	 */
+	private static int readVarint(ByteBuffer buffer) {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			byte b = buffer.get();
+			value |= (b & 0x7f) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Builds the exception for a map too large to hold.
+	 *
+	 * @return exception to throw
+	 */
+	private static InvalidFileException tooLarge() {
+		return new InvalidFileException("Martian land is too large to load, aborting mission.");
+	}
+
+	/**
+	 * Builds the exception for a map with a wrong length or boundary.
+	 *
+	 * @param row    row of the first offending cell
+	 * @param column column of the first offending cell
+	 * @return exception to throw
+	 */
+	private static InvalidFileException invalid(int row, int column) {
+		return new InvalidFileException("Invalid File content, aborting mission.", row, column);
+	}
+
+	/**
+	 * Maps a block of rows, validates them and copies them into the grid.
+	 *
+	 * @param channel channel of the map file
+	 * @param size    size of the map file in bytes
+	 * @param grid    grid to fill, null to only check the rows
+	 * @param rows    where the rows lie
+	 * @param fromY   first row of the block
+	 * @param toY     row after the last row of the block
+	 * @return earliest fault of the worst kind found in the block
+	 */
+	private static Fault loadBlock(FileChannel channel, long size, MartianGrid grid, Rows rows, int fromY, int toY) {
+		final int width = rows.width;
+		final int height = rows.height;
+		final int eol = rows.eol;
+		long start = rows.start(fromY);
+		long end = rows.starts == null ? Math.min(toY * rows.stride, size) : rows.start(toY - 1) + width;
+		MappedByteBuffer buffer;
+		try {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		Fault fault = Fault.NONE;
+		for (int y = fromY; y < toY; y++) {
+			int offset = (int) (rows.start(y) - start);
+			for (int x = 0; x < width; x++) {
+				int status = checkCell(buffer.get(offset + x) & 0xff, x, y, width, height);
+				if (status == ROW_INVALID) {
+					return new Fault(status, y, x);
+				}
+				if (status == ROW_UNKNOWN && fault == Fault.NONE) {
+					fault = new Fault(status, y, x);
+				}
+			}
+			// rows found by scanning already ended where they should
+			if (rows.starts == null && (y < height - 1 || rows.trailingEol)) {
+				if ((eol == 2 && buffer.get(offset + width) != '\r')
+						|| buffer.get(offset + width + eol - 1) != '\n') {
+					return new Fault(ROW_INVALID, y, width);
+				}
+			}
+			if (grid != null) {
+				grid.setRow(y, buffer, offset);
+			}
+		}
+		return fault;
+	}
+}
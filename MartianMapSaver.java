@@ -0,0 +1,181 @@
+/**
+ * This class saves a Martian land map to file.
+ * Rows are copied from the grid into a large buffer with their line
+ * endings and written in order through one channel. The map is written
+ * to a temporary file first and then moved over the target, so a save
+ * that fails never leaves a broken map behind. Mostly empty maps can
+ * also be saved compressed, with each row stored as runs of one symbol.
+ *
+ * @author Soma Hayasaka,hayasakas@student.unimelb.edu.au,1396301
+ *
+ */
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+public class MartianMapSaver {
+	/** Line ending written after every row */
+	private static final byte[] EOL = { '\r', '\n' };
+	/** Bytes of the buffer written at once */
+	private static final int BUFFER_BYTES = 8 << 20;
+
+	/** File name extension of compressed maps */
+	public static final String COMPRESSED_EXTENSION = ".rle";
+	/** "MRLE", marks a compressed map */
+	static final int COMPRESSED_MAGIC = 0x4D524C45;
+	static final int COMPRESSED_VERSION = 1;
+	/** Most bytes one run takes, a symbol and a five byte varint */
+	private static final int MAX_RUN_BYTES = 6;
+
+	/**
+	 * Writes the content of a file through a channel.
+	 */
+	interface Content {
+		/**
+		 * Writes the content.
+		 *
+		 * @param channel channel to write to
+		 * @throws IOException if IO error occurs
+		 */
+		void write(FileChannel channel) throws IOException;
+	}
+
+	/**
+	 * Saves a Martian land map to file.
+	 *
+	 * @param grid     grid holding the map
+	 * @param fileName file name to write
+	 * @throws IOException if IO error occurs
+	 */
+	public static void save(MartianGrid grid, String fileName) throws IOException {
+		replace(fileName, channel -> writeRows(grid, channel));
+	}
+
+	/**
+	 * Saves a Martian land map to file in the compressed format.
+	 * Header (magic, version, width, height), every row as runs of a symbol
+	 * and its length as a varint, then a CRC-32C of the rows.
+	 *
+	 * @param grid     grid holding the map
+	 * @param fileName file name to write
+	 * @throws IOException if IO error occurs
+	 */
+	public static void saveCompressed(MartianGrid grid, String fileName) throws IOException {
+		replace(fileName, channel -> writeRuns(grid, channel));
+	}
+
+	/**
+	 * Writes a file to a temporary file and moves it over the target.
+	 *
+	 * @param fileName file name to write
+	 * @param content  content of the file
+	 * @throws IOException if IO error occurs
+	 */
+	static void replace(String fileName, Content content) throws IOException {
+		Path target = Paths.get(fileName).toAbsolutePath();
+		Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING)) {
+				content.write(channel);
+				channel.force(false);
+			}
+			try {
+				Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * Writes the header, the runs of every row and the checksum.
+	 *
+	 * @param grid    grid holding the map
+	 * @param channel channel to write to
+	 * @throws IOException if IO error occurs
+	 */
+	private static void writeRuns(MartianGrid grid, FileChannel channel) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+		buffer.putInt(COMPRESSED_MAGIC).putInt(COMPRESSED_VERSION);
+		buffer.putInt(grid.getWidth()).putInt(grid.getHeight());
+		CRC32C crc = new CRC32C();
+		int rowsFrom = buffer.position();
+
+		byte[] row = new byte[grid.getWidth()];
+		for (int y = 0; y < grid.getHeight(); y++) {
+			grid.copyRow(y, row, 0);
+			int x = 0;
+			while (x < row.length) {
+				int end = x + 1;
+				while (end < row.length && row[end] == row[x]) {
+					end++;
+				}
+				if (buffer.remaining() < MAX_RUN_BYTES + 4) {
+					crc.update(buffer.array(), rowsFrom, buffer.position() - rowsFrom);
+					drain(buffer, channel);
+					rowsFrom = 0;
+				}
+				buffer.put(row[x]);
+				int run = end - x;
+				while (run >= 0x80) {
+					buffer.put((byte) (run | 0x80));
+					run >>>= 7;
+				}
+				buffer.put((byte) run);
+				x = end;
+			}
+		}
+		crc.update(buffer.array(), rowsFrom, buffer.position() - rowsFrom);
+		buffer.putInt((int) crc.getValue());
+		drain(buffer, channel);
+	}
+
+	/**
+	 * Writes out everything in a buffer and empties it.
+	 *
+	 * @param buffer  buffer to write
+	 * @param channel channel to write to
+	 * @throws IOException if IO error occurs
+	 */
+	private static void drain(ByteBuffer buffer, FileChannel channel) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Writes every row of a grid with its line ending.
+	 *
+	 * @param grid    grid holding the map
+	 * @param channel channel to write to
+	 * @throws IOException if IO error occurs
+	 */
+	private static void writeRows(MartianGrid grid, FileChannel channel) throws IOException {
+		int stride = grid.getWidth() + EOL.length;
+		int rowsPerBuffer = Math.max(1, Math.min(grid.getHeight(), BUFFER_BYTES / stride));
+		byte[] buffer = new byte[rowsPerBuffer * stride];
+		for (int y = 0; y < grid.getHeight(); y += rowsPerBuffer) {
+			int rows = Math.min(rowsPerBuffer, grid.getHeight() - y);
+			for (int i = 0; i < rows; i++) {
+				grid.copyRow(y + i, buffer, i * stride);
+				System.arraycopy(EOL, 0, buffer, i * stride + grid.getWidth(), EOL.length);
+			}
+			ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, rows * stride);
+			while (chunk.hasRemaining()) {
+				channel.write(chunk);
+			}
+		}
+	}
+}
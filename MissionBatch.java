@@ -0,0 +1,449 @@
+/**
+ * This class replays a mission from a script without user interaction.
+ * It reads the same inputs a user would type into the menus, one per line,
+ * and applies them with a loop instead of recursive menus. The map is not
+ * printed after each step, only a summary is given at the end.
+ * At the main menu a script can also undo or redo the changes of earlier
+ * lines, mark the current state and go back to the last mark, so other
+ * moves can be tried without loading the map again, and "show" draws the
+ * map. At the direction menu of a robot or rover, "go X Y" sends it to a
+ * cell along a shortest path.
+ *
+ * @author Soma Hayasaka,hayasakas@student.unimelb.edu.au,1396301
+ *
+ */
+import java.io.BufferedReader;
+import java.io.IOException;
+
+import entities.Entity;
+import entities.Entitys;
+import entities.MartianAnimals;
+import entities.VegetableType;
+
+public class MissionBatch {
+
+	/** Menus the script can be in, matching the interactive menus */
+	private enum Menu {
+		MAIN, ROBOT_SELECT, ROBOT_DIRECTION, ROBOT_ACTION, ROBOT_PLANT, ROBOT_CATTLE, ROBOT_CONFIRM,
+		ROVER_SELECT, ROVER_DIRECTION, ANIMAL_SELECT, ANIMAL_DIRECTION, SAVE, DONE
+	}
+
+	private final MartianLand martianland;
+	/** Changes made by the script, one step per line */
+	private final MoveJournal journal = new MoveJournal();
+	/** Checkpoint taken by the last mark, 0 for the start of the run */
+	private int mark = 0;
+
+	private Menu menu = Menu.MAIN;
+	/** Entity being moved */
+	private MartianLandPossision unit;
+	/** Last direction the robot moved in */
+	private Direction direction;
+	/** Cell left of the robot where it can plant or rear cattle */
+	private Direction action;
+	/** Behaviour points for answering Y at the robot prompt */
+	private int confirmScore;
+
+	/** File name given when the mission was ended, null if none */
+	private String saveFile = null;
+	/** Number of script lines read */
+	private int commands = 0;
+	/** Number of script lines that were not valid for the menu */
+	private int ignored = 0;
+	/** Number of steps taken by robots, rovers and animals */
+	private int steps = 0;
+
+	/**
+	 * Creates a batch run on a Martian land.
+	 *
+	 * @param martianland Martian land map to play on
+	 */
+	public MissionBatch(MartianLand martianland) {
+		this.martianland = martianland;
+	}
+
+	/**
+	 * Applies every command in a script until it ends or the mission is ended.
+	 *
+	 * @param script reader of the script, one input per line
+	 * @throws IOException if IO error occurs
+	 */
+	public void run(BufferedReader script) throws IOException {
+		String line;
+		martianland.setJournal(journal);
+		try {
+			while (menu != Menu.DONE && (line = script.readLine()) != null) {
+				commands++;
+				if (!apply(line)) {
+					ignored++;
+				}
+				martianland.endStep();
+			}
+		} finally {
+			martianland.setJournal(null);
+		}
+	}
+
+	/**
+	 * Gets the file name given when the mission was ended.
+	 *
+	 * @return File name to save the map to, null if none
+	 */
+	public String getSaveFile() {
+		return this.saveFile;
+	}
+
+	/**
+	 * Checks if the script ended the mission.
+	 *
+	 * @return true if the exit option was chosen
+	 */
+	public boolean isDone() {
+		return menu == Menu.DONE;
+	}
+
+	/**
+	 * Prints the summary of the batch run.
+	 */
+	public void showSummary() {
+		System.out.println("Batch run finished.");
+		System.out.println("Commands read: " + commands);
+		System.out.println("Commands ignored: " + ignored);
+		System.out.println("Steps taken: " + steps);
+		System.out.println("");
+		martianland.showHabitabilityStatus();
+	}
+
+	/**
+	 * Applies one input to the current menu.
+	 *
+	 * @param input line of the script
+	 * @return false if the input is not valid for the menu, true otherwise
+	 */
+	private boolean apply(String input) {
+		switch (menu) {
+			case MAIN:
+				return mainMenu(input);
+			case ROBOT_SELECT:
+				return select(parse(input, 1, martianland.getRobotCount()), Menu.ROBOT_DIRECTION);
+			case ROVER_SELECT:
+				return select(parse(input, 1, martianland.getRoverCount()), Menu.ROVER_DIRECTION);
+			case ANIMAL_SELECT:
+				return select(parse(input, 1, martianland.getMartianAnimalCount()), Menu.ANIMAL_DIRECTION);
+			case ROBOT_DIRECTION:
+				if (input.startsWith("go ")) {
+					return go(input, true);
+				}
+				return robotDirection(parse(input, 0, 8));
+			case ROBOT_ACTION:
+				return robotAction(parse(input, 0, 2));
+			case ROBOT_PLANT:
+				return robotPlace(parse(input, 0, 8), true);
+			case ROBOT_CATTLE:
+				return robotPlace(parse(input, 0, 4), false);
+			case ROBOT_CONFIRM:
+				return robotConfirm(input);
+			case ROVER_DIRECTION:
+				if (input.startsWith("go ")) {
+					return go(input, false);
+				}
+				return roverDirection(parse(input, 0, 8));
+			case ANIMAL_DIRECTION:
+				return animalDirection(parse(input, 0, 8));
+			case SAVE:
+				saveFile = input.isEmpty() ? null : input;
+				menu = Menu.DONE;
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * Parses a menu key.
+	 *
+	 * @param input line of the script
+	 * @param min   smallest valid key
+	 * @param max   largest valid key
+	 * @return the key, -1 if it is not a number in range
+	 */
+	private static int parse(String input, int min, int max) {
+		try {
+			int key = Integer.parseInt(input);
+			return (key < min || max < key) ? -1 : key;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Applies a main menu input.
+	 * Besides the menu keys, "undo" and "redo" take back or repeat the
+	 * changes of one line, "mark" remembers the current state and "back"
+	 * returns to the last mark.
+	 *
+	 * @param input line of the script
+	 * @return false if the input is invalid or there is nothing to undo or redo, true otherwise
+	 */
+	private boolean mainMenu(String input) {
+		switch (input) {
+			case "undo":
+				return journal.undo(martianland);
+			case "redo":
+				return journal.redo(martianland);
+			case "mark":
+				mark = journal.checkpoint();
+				return true;
+			case "back":
+				return journal.rollback(martianland, mark);
+			case "show":
+				martianland.getRenderer().render();
+				return true;
+			default:
+				break;
+		}
+		switch (parse(input, 1, 6)) {
+			case 1:
+				menu = Menu.ROBOT_SELECT;
+				return true;
+			case 2:
+				menu = Menu.ROVER_SELECT;
+				return true;
+			case 3:
+				menu = Menu.ANIMAL_SELECT;
+				return true;
+			case 4:
+			case 5:
+				// status is reported once in the summary
+				return true;
+			case 6:
+				menu = Menu.SAVE;
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * Sends the selected robot or rover to a cell along a shortest path.
+	 * Each step is taken as if its direction was entered, so a robot
+	 * arrives at the action menu and a rover earns points for rocks and minerals.
+	 *
+	 * @param input line of the script, "go X Y"
+	 * @param robot true for a robot, false for a rover
+	 * @return false if the cell is invalid or cannot be reached, true otherwise
+	 */
+	private boolean go(String input, boolean robot) {
+		String[] parts = input.trim().split("\\s+");
+		if (parts.length != 3) {
+			return false;
+		}
+		int[] path;
+		try {
+			path = martianland.findPath(unit, Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+		} catch (NumberFormatException e) {
+			return false;
+		}
+		if (path == null) {
+			return false;
+		}
+		for (int i = 0; i < path.length; i++) {
+			if (!robot) {
+				roverDirection(path[i]);
+			} else if (i == path.length - 1) {
+				robotDirection(path[i]);
+			} else {
+				// only the last step stops at the action menu
+				Direction step = new Direction(path[i]);
+				martianland.move(unit, step);
+				unit.add(step);
+				steps++;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Selects the robot, rover or animal to move.
+	 *
+	 * @param key  menu key, -1 if invalid
+	 * @param next direction menu of the selected kind
+	 * @return false if the key is invalid, true otherwise
+	 */
+	private boolean select(int key, Menu next) {
+		if (key < 0) {
+			return false;
+		}
+		if (next == Menu.ROBOT_DIRECTION) {
+			unit = martianland.getRobotPosition(key);
+		} else if (next == Menu.ROVER_DIRECTION) {
+			unit = martianland.getRooerPosition(key);
+		} else {
+			unit = martianland.getAnimal(key);
+		}
+		menu = next;
+		return true;
+	}
+
+	/**
+	 * Applies a direction to the selected robot, as robotDirectionMenu does.
+	 *
+	 * @param key direction key, -1 if invalid
+	 * @return false if the key is invalid, true otherwise
+	 */
+	private boolean robotDirection(int key) {
+		if (key < 0) {
+			return false;
+		}
+		if (key == 0) {
+			menu = Menu.MAIN;
+			return true;
+		}
+		direction = new Direction(key);
+		if (!martianland.isOnMap(unit, direction)) {
+			// the menus let a blocked unit drift onto the boundary, never step off the map
+			return false;
+		}
+		char to_symbol = martianland.getSymbol(unit, direction);
+		steps++;
+		if (to_symbol == Entitys.BOUNDARY) {
+			menu = Menu.MAIN;
+		} else if (to_symbol == Entitys.EMPTY) {
+			martianland.move(unit, direction);
+			action = new Direction(0);
+			action.set(unit.get_x() + direction.get_x() - 1, unit.get_y() + direction.get_y());
+			menu = martianland.getSymbol(action) == Entitys.EMPTY ? Menu.ROBOT_ACTION : Menu.MAIN;
+		} else {
+			Entity entity = martianland.getEntityBySymbol(to_symbol);
+			if (entity instanceof VegetableType) {
+				confirmScore = 1;
+				menu = Menu.ROBOT_CONFIRM;
+			} else if (entity instanceof MartianAnimals) {
+				confirmScore = 2;
+				menu = Menu.ROBOT_CONFIRM;
+			} else {
+				unit.add(direction);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Answers the prompt to water a plant or feed an animal.
+	 *
+	 * @param input Y for yes, N for no
+	 * @return false if the answer is invalid, true otherwise
+	 */
+	private boolean robotConfirm(String input) {
+		if (!input.equals("Y") && !input.equals("N")) {
+			return false;
+		}
+		if (input.equals("Y")) {
+			martianland.addBehaviorScore(confirmScore);
+		}
+		unit.add(direction);
+		menu = Menu.ROBOT_DIRECTION;
+		return true;
+	}
+
+	/**
+	 * Chooses between planting and rearing cattle.
+	 *
+	 * @param key menu key, -1 if invalid
+	 * @return false if the key is invalid, true otherwise
+	 */
+	private boolean robotAction(int key) {
+		if (key < 0) {
+			return false;
+		}
+		if (key == 0) {
+			unit.add(direction);
+			menu = Menu.ROBOT_DIRECTION;
+		} else {
+			menu = key == 1 ? Menu.ROBOT_PLANT : Menu.ROBOT_CATTLE;
+		}
+		return true;
+	}
+
+	/**
+	 * Plants or rears cattle left of the robot, as robotPlantMenu and robotCattleMenu do.
+	 *
+	 * @param key   menu key, -1 if invalid
+	 * @param plant true for the plant menu, false for the cattle menu
+	 * @return false if the key is invalid, true otherwise
+	 */
+	private boolean robotPlace(int key, boolean plant) {
+		if (key < 0) {
+			return false;
+		}
+		if (key == 0) {
+			unit.add(direction);
+			menu = Menu.ROBOT_DIRECTION;
+			return true;
+		}
+		Entitys entity = plant ? MartianLand.getPlant(key) : MartianLand.getCattle(key);
+		if (entity == Entitys.Dog) {
+			martianland.putHealth(action.get_x(), action.get_y(), Entitys.Dog.getHealth());
+		}
+		martianland.rewriteMapChar(action.get_x(), action.get_y(), entity.getSymbol());
+		menu = Menu.ROBOT_ACTION;
+		return true;
+	}
+
+	/**
+	 * Applies a direction to the selected rover, as roverDirectionMenu does.
+	 *
+	 * @param key direction key, -1 if invalid
+	 * @return false if the key is invalid, true otherwise
+	 */
+	private boolean roverDirection(int key) {
+		if (key < 0) {
+			return false;
+		}
+		if (key == 0) {
+			menu = Menu.MAIN;
+			return true;
+		}
+		Direction direction = new Direction(key);
+		if (!martianland.isOnMap(unit, direction)) {
+			return false;
+		}
+		char to_symbol = martianland.getSymbol(unit, direction);
+		steps++;
+		if (to_symbol == Entitys.EMPTY) {
+			martianland.move(unit, direction);
+		} else if (to_symbol == Entitys.Rock.getSymbol()) {
+			martianland.move(unit, direction);
+			martianland.addBehaviorScore(1);
+		} else if (to_symbol == Entitys.Mineral.getSymbol()) {
+			martianland.move(unit, direction);
+			martianland.addBehaviorScore(2);
+		}
+		unit.add(direction);
+		return true;
+	}
+
+	/**
+	 * Applies a direction to the selected Martian animal, as martianAnimalDirectionMenu does.
+	 *
+	 * @param key direction key, -1 if invalid
+	 * @return false if the key is invalid, true otherwise
+	 */
+	private boolean animalDirection(int key) {
+		if (key < 0) {
+			return false;
+		}
+		if (key == 0) {
+			menu = Menu.MAIN;
+			return true;
+		}
+		Direction direction = new Direction(key);
+		if (!martianland.isOnMap(unit, direction)) {
+			return false;
+		}
+		steps++;
+		martianland.stepAnimal(unit, direction, false);
+		unit.add(direction);
+		return true;
+	}
+}
@@ -0,0 +1,230 @@
+/**
+ * This class records every change made to a Martian land so that steps
+ * can be undone and redone. Each change to a cell, a health value or the
+ * behaviour score is appended with its old and new value, and changes are
+ * grouped into steps, so undoing a step only replays that step's changes.
+ *
+ * @author Soma Hayasaka,hayasakas@student.unimelb.edu.au,1396301
+ *
+ */
+import java.util.Arrays;
+
+public class MoveJournal {
+	/** Health value recorded for a position that has no health */
+	public static final int NO_HEALTH = Integer.MIN_VALUE;
+
+	/** Change of the symbol in a cell */
+	private static final byte CELL = 0;
+	/** Change of the health at a position */
+	private static final byte HEALTH = 1;
+	/** Change of the behaviour score, before is 0 and after is the delta */
+	private static final byte SCORE = 2;
+
+	/** Kind of each change */
+	private byte[] kinds = new byte[64];
+	/** X coordinate of each change */
+	private int[] xs = new int[64];
+	/** Y coordinate of each change */
+	private int[] ys = new int[64];
+	/** Value before each change */
+	private int[] befores = new int[64];
+	/** Value after each change */
+	private int[] afters = new int[64];
+	/** Number of changes held */
+	private int changes = 0;
+
+	/** Index after the last change of each step */
+	private int[] stepEnds = new int[64];
+	/** Number of steps held, including undone ones */
+	private int steps = 0;
+	/** Number of steps currently applied */
+	private int cursor = 0;
+
+	/**
+	 * Records a change of the symbol in a cell.
+	 *
+	 * @param x      X coordinate
+	 * @param y      Y coordinate
+	 * @param before Symbol before the change
+	 * @param after  Symbol after the change
+	 */
+	public void cell(int x, int y, char before, char after) {
+		append(CELL, x, y, before, after);
+	}
+
+	/**
+	 * Records a change of the health at a position.
+	 *
+	 * @param x      X coordinate
+	 * @param y      Y coordinate
+	 * @param before Health before the change, NO_HEALTH if none
+	 * @param after  Health after the change, NO_HEALTH if none
+	 */
+	public void health(int x, int y, int before, int after) {
+		append(HEALTH, x, y, before, after);
+	}
+
+	/**
+	 * Records a change of the behaviour score.
+	 *
+	 * @param delta Points added
+	 */
+	public void score(int delta) {
+		append(SCORE, 0, 0, 0, delta);
+	}
+
+	/**
+	 * Closes the current step. Does nothing if the step made no change.
+	 */
+	public void endStep() {
+		if (changes == stepStart(steps)) {
+			return;
+		}
+		if (steps == stepEnds.length) {
+			stepEnds = Arrays.copyOf(stepEnds, steps * 2);
+		}
+		stepEnds[steps++] = changes;
+		cursor = steps;
+	}
+
+	/**
+	 * Marks the current state so that it can be gone back to.
+	 *
+	 * @return Checkpoint, the number of steps applied
+	 */
+	public int checkpoint() {
+		endStep();
+		return cursor;
+	}
+
+	/**
+	 * Gets the number of steps currently applied.
+	 *
+	 * @return Number of steps that can be undone
+	 */
+	public int getCursor() {
+		return this.cursor;
+	}
+
+	/**
+	 * Undoes the last applied step.
+	 *
+	 * @param land Martian land the changes were made to
+	 * @return false if there is no step to undo
+	 */
+	public boolean undo(MartianLand land) {
+		endStep();
+		if (cursor == 0) {
+			return false;
+		}
+		cursor--;
+		for (int i = stepEnds[cursor] - 1; i >= stepStart(cursor); i--) {
+			apply(land, i, befores[i], -afters[i]);
+		}
+		return true;
+	}
+
+	/**
+	 * Applies again the last undone step.
+	 *
+	 * @param land Martian land the changes were made to
+	 * @return false if there is no step to redo
+	 */
+	public boolean redo(MartianLand land) {
+		endStep();
+		if (cursor == steps) {
+			return false;
+		}
+		for (int i = stepStart(cursor); i < stepEnds[cursor]; i++) {
+			apply(land, i, afters[i], afters[i]);
+		}
+		cursor++;
+		return true;
+	}
+
+	/**
+	 * Undoes or redoes steps until a checkpoint is reached.
+	 * After undoing past a checkpoint and making new changes, the checkpoint
+	 * counts the new steps instead.
+	 *
+	 * @param land       Martian land the changes were made to
+	 * @param checkpoint Checkpoint returned by checkpoint()
+	 * @return false if the checkpoint lies past the steps held
+	 */
+	public boolean rollback(MartianLand land, int checkpoint) {
+		endStep();
+		if (checkpoint < 0 || checkpoint > steps) {
+			return false;
+		}
+		while (cursor > checkpoint) {
+			undo(land);
+		}
+		while (cursor < checkpoint) {
+			redo(land);
+		}
+		return true;
+	}
+
+	/**
+	 * Appends a change to the current step.
+	 * Steps undone before the change can no longer be redone.
+	 *
+	 * @param kind   CELL, HEALTH or SCORE
+	 * @param x      X coordinate
+	 * @param y      Y coordinate
+	 * @param before value before the change
+	 * @param after  value after the change
+	 */
+	private void append(byte kind, int x, int y, int before, int after) {
+		if (cursor < steps) {
+			changes = stepStart(cursor);
+			steps = cursor;
+		}
+		if (changes == kinds.length) {
+			int length = changes * 2;
+			kinds = Arrays.copyOf(kinds, length);
+			xs = Arrays.copyOf(xs, length);
+			ys = Arrays.copyOf(ys, length);
+			befores = Arrays.copyOf(befores, length);
+			afters = Arrays.copyOf(afters, length);
+		}
+		kinds[changes] = kind;
+		xs[changes] = x;
+		ys[changes] = y;
+		befores[changes] = before;
+		afters[changes] = after;
+		changes++;
+	}
+
+	/**
+	 * Applies one side of a change.
+	 *
+	 * @param land  Martian land to change
+	 * @param i     index of the change
+	 * @param value symbol or health to set
+	 * @param delta behaviour points to add
+	 */
+	private void apply(MartianLand land, int i, int value, int delta) {
+		switch (kinds[i]) {
+			case CELL:
+				land.replayCell(xs[i], ys[i], (char) value);
+				break;
+			case HEALTH:
+				land.replayHealth(xs[i], ys[i], value);
+				break;
+			default:
+				land.replayScore(delta);
+				break;
+		}
+	}
+
+	/**
+	 * Gets the index of the first change of a step.
+	 *
+	 * @param step step counted from 0
+	 * @return Index of its first change
+	 */
+	private int stepStart(int step) {
+		return step == 0 ? 0 : stepEnds[step - 1];
+	}
+}
@@ -0,0 +1,380 @@
+/**
+ * This class finds shortest paths for space robots and rovers with A*.
+ * A unit steps in any of the 8 directions of the direction menu, each step
+ * costing the same, so the number of steps left is at least the larger of
+ * the two coordinate distances. Only the cells that are searched are kept,
+ * in tables that are reused from one search to the next, so a search costs
+ * the same on a small map and a large one, and no garbage is made but the path.
+ * A path finder is not safe for use by several threads; give each thread its own.
+ *
+ * @author Soma Hayasaka,hayasakas@student.unimelb.edu.au,1396301
+ *
+ */
+import java.util.Arrays;
+
+import entities.Entitys;
+
+public class PathFinder {
+
+	/** Units that can be sent along a path, with the cells they can enter */
+	public enum Unit {
+		/** Space robots only cross empty land */
+		ROBOT,
+		/** Space rovers also cross rocks and minerals */
+		ROVER;
+
+		/**
+		 * Checks if the unit can enter a cell.
+		 *
+		 * @param symbol symbol of the cell
+		 * @return true if the unit can step onto it
+		 */
+		public boolean canEnter(char symbol) {
+			if (symbol == Entitys.EMPTY) {
+				return true;
+			}
+			return this == ROVER && (symbol == Entitys.Rock.getSymbol() || symbol == Entitys.Mineral.getSymbol());
+		}
+
+		/**
+		 * Gets the unit an entity symbol stands for.
+		 *
+		 * @param symbol symbol on the map
+		 * @return Unit, null if the symbol is not a robot or rover
+		 */
+		public static Unit of(char symbol) {
+			if (symbol == Entitys.SpaceRobot.getSymbol()) {
+				return ROBOT;
+			}
+			if (symbol == Entitys.SpaceRover.getSymbol()) {
+				return ROVER;
+			}
+			return null;
+		}
+	}
+
+	/** Default largest number of cells searched before giving up */
+	public static final int DEFAULT_LIMIT = 1 << 22;
+
+	/** Key marking an unused slot of the table */
+	private static final long FREE = -1L;
+
+	private final AnimalLand land;
+	/** Largest number of cells searched */
+	private int limit = DEFAULT_LIMIT;
+
+	/** Table from packed position to node, open addressing */
+	private long[] slotKeys = new long[1 << 12];
+	private int[] slotNodes = new int[1 << 12];
+	/** Slots used by the last search, cleared before the next one */
+	private int[] usedSlots = new int[1 << 11];
+
+	/** Position of each node */
+	private int[] nodeX = new int[1 << 11];
+	private int[] nodeY = new int[1 << 11];
+	/** Steps from the start to each node */
+	private int[] steps = new int[1 << 11];
+	/** Direction key of the step that reached each node */
+	private byte[] via = new byte[1 << 11];
+	/** Position of each node in the heap, -1 once it is closed */
+	private int[] heapIndex = new int[1 << 11];
+	/** Number of nodes of the current search */
+	private int nodes = 0;
+
+	/** Open nodes, a binary heap ordered by estimated path length */
+	private int[] heap = new int[1 << 11];
+	/** Estimated path length of each node, steps plus the distance left */
+	private int[] estimate = new int[1 << 11];
+	private int heapSize = 0;
+
+	/** Number of searches run */
+	private long searches = 0;
+	/** Number of cells expanded over all searches */
+	private long expanded = 0;
+
+	/**
+	 * Creates a path finder over a land.
+	 *
+	 * @param land land to find paths on
+	 */
+	public PathFinder(AnimalLand land) {
+		this.land = land;
+		Arrays.fill(slotKeys, FREE);
+	}
+
+	/**
+	 * Sets the largest number of cells a search looks at before giving up.
+	 *
+	 * @param limit number of cells
+	 */
+	public void setLimit(int limit) {
+		this.limit = Math.max(1, limit);
+	}
+
+	/**
+	 * Gets the number of cells expanded over all searches.
+	 *
+	 * @return Number of cells
+	 */
+	public long getExpanded() {
+		return this.expanded;
+	}
+
+	/**
+	 * Gets the number of searches run.
+	 *
+	 * @return Number of searches
+	 */
+	public long getSearches() {
+		return this.searches;
+	}
+
+	/**
+	 * Finds a shortest path from a cell to another.
+	 *
+	 * @param unit  unit to send
+	 * @param fromX X coordinate of the unit
+	 * @param fromY Y coordinate of the unit
+	 * @param toX   X coordinate of the target
+	 * @param toY   Y coordinate of the target
+	 * @return Direction menu keys of each step, empty if already there, null if the target cannot be reached
+	 */
+	public int[] find(Unit unit, int fromX, int fromY, int toX, int toY) {
+		searches++;
+		if (fromX == toX && fromY == toY) {
+			return new int[0];
+		}
+		if (!unit.canEnter(land.getSymbol(toX, toY))) {
+			return null;
+		}
+		reset();
+		push(node(fromX, fromY), 0, 0, distance(fromX, fromY, toX, toY));
+		while (heapSize > 0) {
+			int current = pop();
+			expanded++;
+			int x = nodeX[current];
+			int y = nodeY[current];
+			if (x == toX && y == toY) {
+				return path(current);
+			}
+			if (nodes >= limit) {
+				return null;
+			}
+			int next = steps[current] + 1;
+			for (int key = 1; key <= 8; key++) {
+				int nx = x + Direction.STEP_X[key];
+				int ny = y + Direction.STEP_Y[key];
+				if (!unit.canEnter(land.getSymbol(nx, ny))) {
+					continue;
+				}
+				int neighbour = node(nx, ny);
+				if (steps[neighbour] < 0) {
+					push(neighbour, next, key, next + distance(nx, ny, toX, toY));
+				} else if (heapIndex[neighbour] >= 0 && next < steps[neighbour]) {
+					steps[neighbour] = next;
+					via[neighbour] = (byte) key;
+					estimate[neighbour] = next + distance(nx, ny, toX, toY);
+					siftUp(heapIndex[neighbour]);
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the number of steps between two cells for a unit that can step diagonally.
+	 *
+	 * @param x   X coordinate of the first cell
+	 * @param y   Y coordinate of the first cell
+	 * @param toX X coordinate of the second cell
+	 * @param toY Y coordinate of the second cell
+	 * @return Larger of the two coordinate distances
+	 */
+	private static int distance(int x, int y, int toX, int toY) {
+		return Math.max(Math.abs(toX - x), Math.abs(toY - y));
+	}
+
+	/**
+	 * Follows the steps back from the target to build the path.
+	 *
+	 * @param target node of the target
+	 * @return Direction menu keys from the start
+	 */
+	private int[] path(int target) {
+		int[] keys = new int[steps[target]];
+		int x = nodeX[target];
+		int y = nodeY[target];
+		for (int i = keys.length - 1; i >= 0; i--) {
+			int key = via[slotNodes[slot(x, y)]];
+			keys[i] = key;
+			x -= Direction.STEP_X[key];
+			y -= Direction.STEP_Y[key];
+		}
+		return keys;
+	}
+
+	/**
+	 * Empties the tables of the last search.
+	 */
+	private void reset() {
+		for (int i = 0; i < nodes; i++) {
+			slotKeys[usedSlots[i]] = FREE;
+		}
+		nodes = 0;
+		heapSize = 0;
+	}
+
+	/**
+	 * Gets the node of a cell, adding a new unvisited node if it has none.
+	 *
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @return Node of the cell, with steps -1 if it was added
+	 */
+	private int node(int x, int y) {
+		int slot = slot(x, y);
+		if (slotKeys[slot] != FREE) {
+			return slotNodes[slot];
+		}
+		if (nodes == nodeX.length) {
+			growNodes();
+		}
+		int node = nodes++;
+		slotKeys[slot] = PositionIndex.key(x, y);
+		slotNodes[slot] = node;
+		usedSlots[node] = slot;
+		nodeX[node] = x;
+		nodeY[node] = y;
+		steps[node] = -1;
+		heapIndex[node] = -1;
+		if (nodes * 2 > slotKeys.length) {
+			growTable();
+		}
+		return node;
+	}
+
+	/**
+	 * Finds the slot of a cell, or the free slot where it belongs.
+	 *
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @return Slot index
+	 */
+	private int slot(int x, int y) {
+		long key = PositionIndex.key(x, y);
+		int mask = slotKeys.length - 1;
+		long h = key * 0x9E3779B97F4A7C15L;
+		int slot = (int) (h ^ (h >>> 32)) & mask;
+		while (slotKeys[slot] != FREE && slotKeys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void growNodes() {
+		int length = nodeX.length * 2;
+		nodeX = Arrays.copyOf(nodeX, length);
+		nodeY = Arrays.copyOf(nodeY, length);
+		steps = Arrays.copyOf(steps, length);
+		via = Arrays.copyOf(via, length);
+		heapIndex = Arrays.copyOf(heapIndex, length);
+		heap = Arrays.copyOf(heap, length);
+		estimate = Arrays.copyOf(estimate, length);
+		usedSlots = Arrays.copyOf(usedSlots, length);
+	}
+
+	private void growTable() {
+		slotKeys = new long[slotKeys.length * 2];
+		slotNodes = new int[slotKeys.length];
+		Arrays.fill(slotKeys, FREE);
+		for (int node = 0; node < nodes; node++) {
+			int slot = slot(nodeX[node], nodeY[node]);
+			slotKeys[slot] = PositionIndex.key(nodeX[node], nodeY[node]);
+			slotNodes[slot] = node;
+			usedSlots[node] = slot;
+		}
+	}
+
+	/**
+	 * Opens a node.
+	 *
+	 * @param node  node to open
+	 * @param count steps from the start
+	 * @param key   direction key of the step that reached it
+	 * @param guess steps plus the distance left
+	 */
+	private void push(int node, int count, int key, int guess) {
+		steps[node] = count;
+		via[node] = (byte) key;
+		estimate[node] = guess;
+		heap[heapSize] = node;
+		heapIndex[node] = heapSize;
+		siftUp(heapSize++);
+	}
+
+	/**
+	 * Closes the open node with the shortest estimate.
+	 *
+	 * @return Node closed
+	 */
+	private int pop() {
+		int top = heap[0];
+		heapIndex[top] = -1;
+		heapSize--;
+		if (heapSize > 0) {
+			heap[0] = heap[heapSize];
+			heapIndex[heap[0]] = 0;
+			siftDown(0);
+		}
+		return top;
+	}
+
+	/**
+	 * Checks if a node should be closed before another.
+	 * On equal estimates the node further from the start goes first, as it
+	 * is closer to the target.
+	 *
+	 * @param a node to check
+	 * @param b node to check against
+	 * @return true if a goes first
+	 */
+	private boolean before(int a, int b) {
+		return estimate[a] < estimate[b] || (estimate[a] == estimate[b] && steps[a] > steps[b]);
+	}
+
+	private void siftUp(int i) {
+		int node = heap[i];
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!before(node, heap[parent])) {
+				break;
+			}
+			heap[i] = heap[parent];
+			heapIndex[heap[i]] = i;
+			i = parent;
+		}
+		heap[i] = node;
+		heapIndex[node] = i;
+	}
+
+	private void siftDown(int i) {
+		int node = heap[i];
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= heapSize) {
+				break;
+			}
+			if (child + 1 < heapSize && before(heap[child + 1], heap[child])) {
+				child++;
+			}
+			if (!before(heap[child], node)) {
+				break;
+			}
+			heap[i] = heap[child];
+			heapIndex[heap[i]] = i;
+			i = child;
+		}
+		heap[i] = node;
+		heapIndex[node] = i;
+	}
+}
@@ -0,0 +1,425 @@
+/**
+ * This class proposes where the space robots should plant and rear cattle
+ * to raise the Total Habitability Score the most with a given number of
+ * placements. A robot places on the cell to its left after walking onto
+ * empty land, so a cell can be used if it is empty and the empty cell to
+ * its right, its robot cell, can be walked to by a robot.
+ *
+ * Each placement adds the score of its entity, the same delta the map
+ * keeps as cells change, so no scan of the map is needed. Vegetables and
+ * cattle are eaten by Martian animals, and dogs lose their fights, so
+ * their score is weighed by the chance that no Martian animal gets there,
+ * which falls with the animal's distance in steps. The distances are read
+ * from distance fields kept by the land.
+ *
+ * Ranges of rows are weighed on a fork-join pool, each keeping its best
+ * cells, which are then merged in rank order. Placements are then picked
+ * greedily from the merged cells, best first. A cell is skipped if its
+ * placement cell or robot cell belongs to a placement picked before it,
+ * or if the placements picked before it cut its robot cell off from every
+ * robot. The proposals are meant to be carried out in the order given,
+ * by robots walking from where they stand now. If too many cells are
+ * skipped, the ranges are weighed again keeping more cells each.
+ *
+ * @author Soma Hayasaka,hayasakas@student.unimelb.edu.au,1396301
+ *
+ */
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import entities.EarthAnimals;
+import entities.Entity;
+import entities.Entitys;
+import entities.VegetableType;
+
+public class PlacementOptimizer extends RecursiveTask<PlacementOptimizer> {
+	/** Optimizers are only ever run in memory and never written out */
+	private static final long serialVersionUID = 1L;
+
+	/** Steps at which the chance of a Martian animal getting to a cell has fallen to about a third */
+	public static final double HORIZON = 8.0;
+
+	/** Ranges with fewer cells than this are weighed by one thread */
+	private static final int LEAF_CELLS = 1 << 16;
+	/** Cells kept by each range for every placement of the budget, before any are skipped */
+	private static final int CELLS_PER_PLACEMENT = 4;
+	/** Mark of a cell holding a picked placement */
+	private static final int PLACED = 1;
+	/** Mark of the robot cell of a picked placement */
+	private static final int RESERVED = 2;
+	/** Expected scores are ranked in thousandths of a point */
+	private static final int SCALE = 1000;
+	/** Highest expected score ranked, in thousandths of a point */
+	private static final long TOP = (1 << 19) - 1;
+
+	/** Entities of the plant menu and then the cattle menu */
+	private static final Entitys[] CHOICES = new Entitys[12];
+
+	static {
+		for (int key = 1; key <= 8; key++) {
+			CHOICES[key - 1] = MartianLand.getPlant(key);
+		}
+		for (int key = 1; key <= 4; key++) {
+			CHOICES[7 + key] = MartianLand.getCattle(key);
+		}
+	}
+
+	private final MartianLand land;
+	/** Steps from each cell to the nearest robot */
+	private final DistanceField robots;
+	/** Steps from each cell to the nearest Martian animal */
+	private final DistanceField animals;
+	/** Largest number of placements */
+	private final int budget;
+	/** Largest number of cells kept by the range */
+	private final int limit;
+	/** First row of the range */
+	private final int fromY;
+	/** Row after the last row of the range */
+	private final int toY;
+
+	/** Best cells of the range, best first, packed by rank(); the picked placements once selected */
+	private long[] ranked = new long[0];
+	/** Number of usable cells in the range, kept or not */
+	private long usable = 0;
+	/** Cells found cut off from every robot by picked placements, which stay cut off */
+	private CellMap cutOff = null;
+
+	/**
+	 * Creates an optimizer of a range of rows.
+	 *
+	 * @param land    Martian land to place on
+	 * @param robots  steps to the nearest robot
+	 * @param animals steps to the nearest Martian animal
+	 * @param budget  largest number of placements
+	 * @param limit   largest number of cells kept by the range
+	 * @param fromY   first row of the range
+	 * @param toY     row after the last row of the range
+	 */
+	private PlacementOptimizer(MartianLand land, DistanceField robots, DistanceField animals, int budget,
+			int limit, int fromY, int toY) {
+		this.land = land;
+		this.robots = robots;
+		this.animals = animals;
+		this.budget = budget;
+		this.limit = limit;
+		this.fromY = fromY;
+		this.toY = toY;
+	}
+
+	/**
+	 * Proposes the best placements on a land.
+	 * The land must not be tiled, as it is read by several threads at once.
+	 *
+	 * @param land    Martian land to place on
+	 * @param budget  largest number of placements
+	 * @param threads number of threads weighing the rows, 1 or less to weigh them on the caller
+	 * @return Proposals, best first
+	 */
+	public static PlacementOptimizer propose(MartianLand land, int budget, int threads) {
+		DistanceField robots = land.getDistanceField(DistanceField.Target.ROBOT);
+		DistanceField animals = land.getDistanceField(DistanceField.Target.MARTIAN_ANIMAL);
+		budget = Math.max(0, budget);
+		long limit = (long) budget * CELLS_PER_PLACEMENT;
+		ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+		try {
+			while (true) {
+				PlacementOptimizer optimizer = new PlacementOptimizer(land, robots, animals, budget,
+						(int) Math.min(limit, Integer.MAX_VALUE - 8), 0, land.getHeight());
+				if (pool != null) {
+					pool.invoke(optimizer);
+				} else {
+					optimizer.weighRows();
+				}
+				// more cells are only needed if too many were skipped and some were left out
+				boolean complete = optimizer.ranked.length == optimizer.usable;
+				if (optimizer.select() || complete) {
+					return optimizer;
+				}
+				limit *= 2;
+			}
+		} finally {
+			if (pool != null) {
+				pool.shutdown();
+			}
+		}
+	}
+
+	@Override
+	protected PlacementOptimizer compute() {
+		long cells = (long) (toY - fromY) * land.getWidth();
+		if (cells <= LEAF_CELLS || toY - fromY < 2) {
+			weighRows();
+			return this;
+		}
+		int middle = (fromY + toY) >>> 1;
+		PlacementOptimizer upper = new PlacementOptimizer(land, robots, animals, budget, limit, fromY, middle);
+		PlacementOptimizer lower = new PlacementOptimizer(land, robots, animals, budget, limit, middle, toY);
+		lower.fork();
+		upper.compute();
+		lower.join();
+		ranked = merge(upper.ranked, lower.ranked);
+		usable = upper.usable + lower.usable;
+		return this;
+	}
+
+	/**
+	 * Gets the number of proposed placements.
+	 *
+	 * @return Number of placements, at most the budget
+	 */
+	public int getCount() {
+		return ranked.length;
+	}
+
+	/**
+	 * Gets the X coordinate of a placement.
+	 *
+	 * @param i index of the placement, best first
+	 * @return X coordinate
+	 */
+	public int getX(int i) {
+		return (int) (cell(ranked[i]) % land.getWidth());
+	}
+
+	/**
+	 * Gets the Y coordinate of a placement.
+	 *
+	 * @param i index of the placement, best first
+	 * @return Y coordinate
+	 */
+	public int getY(int i) {
+		return (int) (cell(ranked[i]) / land.getWidth());
+	}
+
+	/**
+	 * Gets the entity of a placement.
+	 *
+	 * @param i index of the placement, best first
+	 * @return Plant or cattle to place
+	 */
+	public Entitys getEntity(int i) {
+		return CHOICES[(int) (ranked[i] & 0xf)];
+	}
+
+	/**
+	 * Gets the expected score of a placement.
+	 *
+	 * @param i index of the placement, best first
+	 * @return Score of the entity weighed by the chance it is not eaten
+	 */
+	public double getExpected(int i) {
+		return (double) (TOP - (ranked[i] >>> 44)) / SCALE;
+	}
+
+	/**
+	 * Prints the proposed placements and how they change the score.
+	 */
+	public void showProposals() {
+		System.out.println("Placements proposed: " + ranked.length);
+		int gain = 0;
+		double expected = 0;
+		for (int i = 0; i < ranked.length; i++) {
+			Entitys entitys = getEntity(i);
+			String verb = entitys.getEntity() instanceof EarthAnimals ? "Rear" : "Plant";
+			System.out.println(String.format("[%d] %s a %s at position (%d, %d), expected score %.2f", i + 1, verb,
+					entitys.getName(), getX(i), getY(i), getExpected(i)));
+			gain += entitys.getEntity().getScore();
+			expected += getExpected(i);
+		}
+		int score = land.getHabitabilityScore();
+		System.out.println(String.format("Total Habitability Score: %d now, %d if nothing is eaten, %.2f expected",
+				score, score + gain, score + expected));
+		System.out.println("");
+	}
+
+	/**
+	 * Weighs every usable cell in the range with this thread.
+	 */
+	private void weighRows() {
+		int width = land.getWidth();
+		long[] found = new long[64];
+		int count = 0;
+		for (int y = fromY; y < toY; y++) {
+			for (int x = 0; x + 1 < width; x++) {
+				if (land.getSymbol(x, y) != Entitys.EMPTY || land.getSymbol(x + 1, y) != Entitys.EMPTY
+						|| robots.getDistance(x + 1, y) < 0) {
+					continue;
+				}
+				if (count == found.length) {
+					found = Arrays.copyOf(found, count * 2);
+				}
+				found[count++] = weigh(x, y, (long) y * width + x);
+			}
+		}
+		Arrays.sort(found, 0, count);
+		ranked = Arrays.copyOf(found, Math.min(count, limit));
+		usable = count;
+	}
+
+	/**
+	 * Picks the placements from the kept cells, best first, skipping those
+	 * that clash with the placements picked before them.
+	 *
+	 * @return true if the budget was filled
+	 */
+	private boolean select() {
+		int width = land.getWidth();
+		CellMap taken = new CellMap();
+		long[] picks = new long[Math.min(budget, ranked.length)];
+		int count = 0;
+		for (int i = 0; i < ranked.length && count < picks.length; i++) {
+			long cell = cell(ranked[i]);
+			int x = (int) (cell % width);
+			int y = (int) (cell / width);
+			if (taken.contains(x, y) || taken.contains(x + 1, y) || !reachable(x + 1, y, taken)) {
+				continue;
+			}
+			picks[count++] = ranked[i];
+			taken.put(x, y, PLACED);
+			taken.put(x + 1, y, RESERVED);
+		}
+		ranked = Arrays.copyOf(picks, count);
+		return count == budget;
+	}
+
+	/**
+	 * Checks if a robot can still walk to a cell once the placements picked
+	 * so far are made. The way down the robot distance field is tried
+	 * first, and the cells around are only searched if a placement is on it.
+	 *
+	 * @param x     X coordinate of the robot cell
+	 * @param y     Y coordinate of the robot cell
+	 * @param taken marks of the cells of picked placements
+	 * @return true if a robot can walk there
+	 */
+	private boolean reachable(int x, int y, CellMap taken) {
+		if (cutOff != null && cutOff.contains(x, y)) {
+			return false;
+		}
+		int cx = x;
+		int cy = y;
+		while (robots.getDistance(cx, cy) > 0) {
+			if (taken.contains(cx, cy) && taken.get(cx, cy) == PLACED) {
+				return search(x, y, taken);
+			}
+			int key = robots.getStep(cx, cy);
+			cx += Direction.STEP_X[key];
+			cy += Direction.STEP_Y[key];
+		}
+		return true;
+	}
+
+	/**
+	 * Searches the empty land around a cell for a robot, walking around the
+	 * picked placements. Placements are only ever added, so every cell of
+	 * a search that finds no robot stays cut off.
+	 *
+	 * @param x     X coordinate of the robot cell
+	 * @param y     Y coordinate of the robot cell
+	 * @param taken marks of the cells of picked placements
+	 * @return true if a robot was found
+	 */
+	private boolean search(int x, int y, CellMap taken) {
+		CellMap seen = new CellMap();
+		long[] queue = new long[64];
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = PositionIndex.key(x, y);
+		seen.put(x, y, 1);
+		while (head < tail) {
+			int cx = (int) queue[head];
+			int cy = (int) (queue[head++] >>> 32);
+			for (int key = 1; key <= 8; key++) {
+				int nx = cx + Direction.STEP_X[key];
+				int ny = cy + Direction.STEP_Y[key];
+				char symbol = land.getSymbol(nx, ny);
+				if (symbol == Entitys.SpaceRobot.getSymbol()) {
+					return true;
+				}
+				if (symbol != Entitys.EMPTY || seen.contains(nx, ny)
+						|| (taken.contains(nx, ny) && taken.get(nx, ny) == PLACED)) {
+					continue;
+				}
+				seen.put(nx, ny, 1);
+				if (tail == queue.length) {
+					queue = Arrays.copyOf(queue, tail * 2);
+				}
+				queue[tail++] = PositionIndex.key(nx, ny);
+			}
+		}
+		if (cutOff == null) {
+			cutOff = new CellMap();
+		}
+		for (int i = 0; i < tail; i++) {
+			cutOff.put((int) queue[i], (int) (queue[i] >>> 32), 1);
+		}
+		return false;
+	}
+
+	/**
+	 * Chooses the entity with the highest expected score for a cell.
+	 * On equal scores the first in menu order is taken.
+	 *
+	 * @param x    X coordinate
+	 * @param y    Y coordinate
+	 * @param cell cell index, row by row
+	 * @return Rank of the cell
+	 */
+	private long weigh(int x, int y, long cell) {
+		int steps = animals.getDistance(x, y);
+		double safe = steps < 0 ? 1.0 : 1.0 - Math.exp(-steps / HORIZON);
+		long best = -1;
+		int choice = 0;
+		for (int i = 0; i < CHOICES.length; i++) {
+			Entity entity = CHOICES[i].getEntity();
+			double weight = entity instanceof VegetableType || entity instanceof EarthAnimals ? safe : 1.0;
+			long expected = Math.round(entity.getScore() * weight * SCALE);
+			if (expected > best) {
+				best = expected;
+				choice = i;
+			}
+		}
+		return rank(best, cell, choice);
+	}
+
+	/**
+	 * Packs a cell so that packed cells sort best first, then in row order.
+	 *
+	 * @param expected expected score in thousandths of a point
+	 * @param cell     cell index, row by row
+	 * @param choice   index of the entity in CHOICES
+	 * @return Rank of the cell
+	 */
+	private static long rank(long expected, long cell, int choice) {
+		return (TOP - expected) << 44 | cell << 4 | choice;
+	}
+
+	/**
+	 * Gets the cell index of a rank.
+	 *
+	 * @param rank rank of the cell
+	 * @return Cell index, row by row
+	 */
+	private static long cell(long rank) {
+		return (rank >>> 4) & ((1L << 40) - 1);
+	}
+
+	/**
+	 * Merges the best cells of two ranges, keeping at most the limit.
+	 *
+	 * @param a best cells of the first range, best first
+	 * @param b best cells of the second range, best first
+	 * @return Best cells of both, best first
+	 */
+	private long[] merge(long[] a, long[] b) {
+		long[] merged = new long[Math.min(limit, a.length + b.length)];
+		int i = 0;
+		int j = 0;
+		for (int k = 0; k < merged.length; k++) {
+			merged[k] = j == b.length || (i < a.length && a[i] < b[j]) ? a[i++] : b[j++];
+		}
+		return merged;
+	}
+}
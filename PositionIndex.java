@@ -0,0 +1,219 @@
+/**
+ * This class keeps the positions of one kind of entity on the map.
+ * Positions are kept ordered by row and then column, the same order
+ * in which the menus list them.
+ *
+ * @author Soma Hayasaka,hayasakas@student.unimelb.edu.au,1396301
+ *
+ */
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+public class PositionIndex {
+	/** Positions packed by key(), sorted ascending */
+	private long[] keys = new long[8];
+	/** Number of positions held */
+	private int size = 0;
+
+	/**
+	 * Creates an empty index.
+	 */
+	public PositionIndex() {
+	}
+
+	/**
+	 * Creates an index from packed positions saved by writeKeys().
+	 *
+	 * @param sorted Packed positions, sorted ascending
+	 */
+	public PositionIndex(LongBuffer sorted) {
+		this.size = sorted.remaining();
+		this.keys = new long[Math.max(8, size)];
+		sorted.get(keys, 0, size);
+	}
+
+	/**
+	 * Packs a position into a key that sorts by row and then column.
+	 *
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @return Packed key
+	 */
+	public static long key(int x, int y) {
+		return ((long) y << 32) | (x & 0xffffffffL);
+	}
+
+	/**
+	 * Gets the number of positions held.
+	 *
+	 * @return Number of positions
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Writes every packed position in order.
+	 *
+	 * @param dst Buffer to write to
+	 */
+	public void writeKeys(LongBuffer dst) {
+		dst.put(keys, 0, size);
+	}
+
+	/**
+	 * Adds a position.
+	 *
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 */
+	public void add(int x, int y) {
+		long key = key(x, y);
+		int index;
+		if (size == 0 || keys[size - 1] < key) {
+			// positions found while scanning the map arrive in order
+			index = size;
+		} else {
+			index = Arrays.binarySearch(keys, 0, size, key);
+			if (index >= 0) {
+				return;
+			}
+			index = -(index + 1);
+		}
+		if (size == keys.length) {
+			keys = Arrays.copyOf(keys, size * 2);
+		}
+		System.arraycopy(keys, index, keys, index + 1, size - index);
+		keys[index] = key;
+		size++;
+	}
+
+	/**
+	 * Adds every position held by another index.
+	 *
+	 * @param other Index to add positions from
+	 */
+	public void addAll(PositionIndex other) {
+		if (other.size == 0) {
+			return;
+		}
+		if (size == 0 || keys[size - 1] < other.keys[0]) {
+			// other follows this one, as for rows counted in order
+			if (size + other.size > keys.length) {
+				keys = Arrays.copyOf(keys, size + other.size);
+			}
+			System.arraycopy(other.keys, 0, keys, size, other.size);
+			size += other.size;
+			return;
+		}
+		long[] merged = new long[Math.max(keys.length, size + other.size)];
+		int i = 0;
+		int j = 0;
+		int n = 0;
+		while (i < size && j < other.size) {
+			if (keys[i] < other.keys[j]) {
+				merged[n++] = keys[i++];
+			} else if (keys[i] > other.keys[j]) {
+				merged[n++] = other.keys[j++];
+			} else {
+				merged[n++] = keys[i++];
+				j++;
+			}
+		}
+		while (i < size) {
+			merged[n++] = keys[i++];
+		}
+		while (j < other.size) {
+			merged[n++] = other.keys[j++];
+		}
+		keys = merged;
+		size = n;
+	}
+
+	/**
+	 * Removes a position.
+	 *
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @return true if the position was held, false otherwise
+	 */
+	public boolean remove(int x, int y) {
+		int index = indexOf(x, y);
+		if (index < 0) {
+			return false;
+		}
+		System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+		size--;
+		return true;
+	}
+
+	/**
+	 * Moves a position to one that is not held, shifting only the positions
+	 * between the two, so a step to a nearby cell does not shift the whole index.
+	 *
+	 * @param fromX X coordinate held
+	 * @param fromY Y coordinate held
+	 * @param toX   new X coordinate
+	 * @param toY   new Y coordinate
+	 * @return false if the first position was not held or the second was, true otherwise
+	 */
+	public boolean move(int fromX, int fromY, int toX, int toY) {
+		int from = indexOf(fromX, fromY);
+		int to = indexOf(toX, toY);
+		if (from < 0 || to >= 0) {
+			return false;
+		}
+		long key = key(toX, toY);
+		to = -(to + 1);
+		if (to > from) {
+			// the new key goes before the position it was inserted at, once this one is gone
+			System.arraycopy(keys, from + 1, keys, from, to - from - 1);
+			keys[to - 1] = key;
+		} else {
+			System.arraycopy(keys, to, keys, to + 1, from - to);
+			keys[to] = key;
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the index of a position.
+	 *
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @return Index counted from 0, negative if not held
+	 */
+	public int indexOf(int x, int y) {
+		return Arrays.binarySearch(keys, 0, size, key(x, y));
+	}
+
+	/**
+	 * Gets the x coordinate of a position.
+	 *
+	 * @param index Index counted from 0
+	 * @return X coordinate
+	 */
+	public int getX(int index) {
+		return (int) keys[index];
+	}
+
+	/**
+	 * Gets the y coordinate of a position.
+	 *
+	 * @param index Index counted from 0
+	 * @return Y coordinate
+	 */
+	public int getY(int index) {
+		return (int) (keys[index] >>> 32);
+	}
+
+	/**
+	 * Gets a position.
+	 *
+	 * @param index Index counted from 0
+	 * @return New position object
+	 */
+	public MartianLandPossision get(int index) {
+		return new MartianLandPossision(getX(index), getY(index));
+	}
+}
@@ -0,0 +1,344 @@
+/**
+ * This class estimates how much of a Martian land the Martian animals are
+ * likely to eat by running many futures of it. Each rollout moves every
+ * Martian animal once a tick for a number of ticks, with a policy and the
+ * rules of the animal menu, in a RolloutLand over the land, so the land
+ * itself is never changed. Plants, cattle and dogs never move, so each
+ * plant or cattle eaten and each dog killed is counted at its own cell as
+ * it happens, and nothing has to be compared at the end of a rollout.
+ *
+ * Rollouts are split into chunks that run on several threads, each chunk
+ * with its own copy and counts, which are added up in chunk order. Every
+ * rollout has its own random numbers drawn from the seed beforehand, so
+ * the estimate depends on the seed and not on the number of threads.
+ *
+ * @author Soma Hayasaka,hayasakas@student.unimelb.edu.au,1396301
+ *
+ */
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+import entities.EarthAnimals;
+import entities.Entity;
+import entities.Entitys;
+import entities.VegetableType;
+
+public class RiskEstimator {
+	/** Default number of ticks in a rollout */
+	public static final int DEFAULT_TICKS = 16;
+	/** Number of cells with the lowest survival odds printed */
+	private static final int SHOWN = 10;
+	/** Number of chunks of rollouts for each thread, so threads finishing early can take more */
+	private static final int CHUNKS_PER_THREAD = 4;
+	/** Position of an animal that died in a rollout, no position packs to it */
+	private static final long DEAD = -1L;
+
+	private final MartianLand land;
+	private final AnimalPolicy policy;
+	/** Random numbers the seed of each rollout is drawn from */
+	private final SplittableRandom random;
+	/** Positions of the Martian animals, in the order they move in */
+	private final long[] animals;
+	/** Position of each plant, cattle and dog */
+	private final int[] riskX;
+	private final int[] riskY;
+	/** Entity at each plant, cattle and dog */
+	private final Entitys[] riskEntitys;
+	/** Index of each plant, cattle and dog by position */
+	private final CellMap riskIndex;
+	/** Number of rollouts in which each plant, cattle or dog was lost */
+	private final long[] lost;
+	/** Number of ticks in a rollout */
+	private int ticks = DEFAULT_TICKS;
+	/** Number of rollouts run */
+	private long rollouts = 0;
+	/** Points of the plants, cattle and dogs lost over all rollouts */
+	private long lostScore = 0;
+	/** Behaviour points won over all rollouts */
+	private long wonScore = 0;
+
+	/** Number of threads running the rollouts */
+	private int parts = 1;
+	/** Threads running the rollouts, null if they run on the caller */
+	private ForkJoinPool pool = null;
+
+	/**
+	 * Creates an estimator with the default seed.
+	 *
+	 * @param land   Martian land to estimate, which must not change while rollouts run
+	 * @param policy policy choosing the moves
+	 */
+	public RiskEstimator(MartianLand land, AnimalPolicy policy) {
+		this(land, policy, AnimalSimulation.DEFAULT_SEED);
+	}
+
+	/**
+	 * Creates an estimator.
+	 *
+	 * @param land   Martian land to estimate, which must not change while rollouts run
+	 * @param policy policy choosing the moves
+	 * @param seed   seed of the random numbers
+	 */
+	public RiskEstimator(MartianLand land, AnimalPolicy policy, long seed) {
+		this.land = land;
+		this.policy = policy;
+		this.random = new SplittableRandom(seed);
+		this.animals = Arrays.copyOf(land.copyAnimalPositions(new long[0]), land.getMartianAnimalCount());
+
+		int count = 0;
+		for (Entitys entitys : Entitys.values()) {
+			if (atRisk(entitys)) {
+				count += land.getPositions(entitys).size();
+			}
+		}
+		this.riskX = new int[count];
+		this.riskY = new int[count];
+		this.riskEntitys = new Entitys[count];
+		this.riskIndex = new CellMap(count);
+		this.lost = new long[count];
+		int i = 0;
+		for (Entitys entitys : Entitys.values()) {
+			if (!atRisk(entitys)) {
+				continue;
+			}
+			PositionIndex index = land.getPositions(entitys);
+			for (int j = 0; j < index.size(); j++) {
+				riskX[i] = index.getX(j);
+				riskY[i] = index.getY(j);
+				riskEntitys[i] = entitys;
+				riskIndex.put(riskX[i], riskY[i], i);
+				i++;
+			}
+		}
+	}
+
+	/**
+	 * Sets the number of ticks in each rollout.
+	 *
+	 * @param ticks number of ticks
+	 */
+	public void setTicks(int ticks) {
+		this.ticks = Math.max(0, ticks);
+	}
+
+	/**
+	 * Runs the rollouts on several threads.
+	 * The land is read by several threads at once, so it must not be tiled.
+	 *
+	 * @param threads number of threads, 1 or less to run on the caller
+	 */
+	public void setThreads(int threads) {
+		close();
+		this.parts = Math.max(1, threads);
+		if (parts > 1) {
+			pool = new ForkJoinPool(parts);
+		}
+	}
+
+	/**
+	 * Stops the threads running the rollouts.
+	 */
+	public void close() {
+		if (pool != null) {
+			pool.shutdown();
+			pool = null;
+		}
+	}
+
+	/**
+	 * Runs a number of rollouts, adding them to those already run.
+	 *
+	 * @param count number of rollouts
+	 */
+	public void run(int count) {
+		if (count <= 0) {
+			return;
+		}
+		long[] seeds = new long[count];
+		for (int r = 0; r < count; r++) {
+			seeds[r] = random.nextLong();
+		}
+		int chunks = Math.min(count, parts * CHUNKS_PER_THREAD);
+		long[][] chunkLost = new long[chunks][lost.length];
+		long[] chunkScores = new long[chunks * 2];
+		IntStream range = IntStream.range(0, chunks);
+		IntConsumer roll = chunk -> {
+			RolloutLand copy = new RolloutLand(land);
+			long[] positions = new long[animals.length];
+			for (int r = chunk * count / chunks; r < (chunk + 1) * count / chunks; r++) {
+				copy.reset();
+				System.arraycopy(animals, 0, positions, 0, animals.length);
+				chunkScores[chunk * 2] += rollout(copy, positions, new SplittableRandom(seeds[r]), chunkLost[chunk]);
+				chunkScores[chunk * 2 + 1] += copy.getBehaviorScore();
+			}
+		};
+		if (pool == null) {
+			range.forEach(roll);
+		} else {
+			pool.submit(() -> range.parallel().forEach(roll)).join();
+		}
+		for (int chunk = 0; chunk < chunks; chunk++) {
+			for (int i = 0; i < lost.length; i++) {
+				lost[i] += chunkLost[chunk][i];
+			}
+			lostScore += chunkScores[chunk * 2];
+			wonScore += chunkScores[chunk * 2 + 1];
+		}
+		rollouts += count;
+	}
+
+	/**
+	 * Gets the number of rollouts run.
+	 *
+	 * @return Number of rollouts
+	 */
+	public long getRollouts() {
+		return this.rollouts;
+	}
+
+	/**
+	 * Gets the number of plants, cattle and dogs at risk.
+	 *
+	 * @return Number of cells
+	 */
+	public int getRiskCount() {
+		return riskX.length;
+	}
+
+	/**
+	 * Gets the X coordinate of a plant, cattle or dog at risk.
+	 *
+	 * @param i index of the cell, in entity and then map order
+	 * @return X coordinate
+	 */
+	public int getX(int i) {
+		return riskX[i];
+	}
+
+	/**
+	 * Gets the Y coordinate of a plant, cattle or dog at risk.
+	 *
+	 * @param i index of the cell, in entity and then map order
+	 * @return Y coordinate
+	 */
+	public int getY(int i) {
+		return riskY[i];
+	}
+
+	/**
+	 * Gets the odds that a plant, cattle or dog at risk is still there after a rollout.
+	 *
+	 * @param i index of the cell, in entity and then map order
+	 * @return Share of the rollouts it survived, 1 if none were run
+	 */
+	public double getSurvival(int i) {
+		return rollouts == 0 ? 1.0 : 1.0 - (double) lost[i] / rollouts;
+	}
+
+	/**
+	 * Gets the odds that what is at a cell is still there after a rollout.
+	 *
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @return Share of the rollouts it survived, 1 if the cell holds no plant, cattle or dog
+	 */
+	public double getSurvival(int x, int y) {
+		return riskIndex.contains(x, y) ? getSurvival(riskIndex.get(x, y)) : 1.0;
+	}
+
+	/**
+	 * Gets the expected fall of the Total Habitability Score over a rollout.
+	 *
+	 * @return Points of the plants, cattle and dogs lost less the behaviour points won, per rollout
+	 */
+	public double getExpectedLoss() {
+		return rollouts == 0 ? 0.0 : (double) (lostScore - wonScore) / rollouts;
+	}
+
+	/**
+	 * Prints the expected loss and the cells least likely to survive.
+	 */
+	public void showSummary() {
+		System.out.println("Rollouts run: " + rollouts + ", ticks in each: " + ticks);
+		System.out.println("Plants, cattle and dogs at risk: " + riskX.length);
+		double perRollout = rollouts == 0 ? 0.0 : 1.0 / rollouts;
+		System.out.println(String.format("Expected score loss: %.2f (%.2f lost, %.2f behaviour points won)",
+				getExpectedLoss(), lostScore * perRollout, wonScore * perRollout));
+		Integer[] order = new Integer[riskX.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		// least likely to survive first, then in entity and map order
+		Arrays.sort(order, (a, b) -> lost[a] != lost[b] ? Long.compare(lost[b], lost[a]) : Integer.compare(a, b));
+		for (int i = 0; i < Math.min(SHOWN, order.length) && lost[order[i]] > 0; i++) {
+			int cell = order[i];
+			System.out.println(String.format("[%d] %s at position (%d, %d), survival odds %.1f%%", i + 1,
+					riskEntitys[cell].getName(), riskX[cell], riskY[cell], 100 * getSurvival(cell)));
+		}
+		System.out.println("");
+	}
+
+	/**
+	 * Runs one rollout on a copy of the land.
+	 * The menu rules leave the health of an animal that killed a dog at the
+	 * dog's cell and leave an animal killed by a dog on the map, so the
+	 * rollout takes the health back to the winner and takes the dead animal
+	 * off the map, and the dead animal moves no more.
+	 *
+	 * @param copy      copy of the land, reset
+	 * @param positions positions of the animals, moved along as they move, DEAD once they die
+	 * @param dice      random numbers of the rollout
+	 * @param counts    number of times each plant, cattle or dog was lost, to add to
+	 * @return Points of the plants, cattle and dogs lost
+	 */
+	private int rollout(RolloutLand copy, long[] positions, SplittableRandom dice, long[] counts) {
+		int score = 0;
+		for (int t = 0; t < ticks; t++) {
+			for (int i = 0; i < positions.length; i++) {
+				if (positions[i] == DEAD) {
+					continue;
+				}
+				int x = (int) positions[i];
+				int y = (int) (positions[i] >>> 32);
+				int key = policy.choose(copy, x, y, dice);
+				if (key == 0) {
+					continue;
+				}
+				int toX = x + Direction.STEP_X[key];
+				int toY = y + Direction.STEP_Y[key];
+				AnimalRules.Outcome outcome = AnimalRules.step(copy, new MartianLandPossision(x, y), new Direction(key),
+						false);
+				if (outcome == AnimalRules.Outcome.ATE || outcome == AnimalRules.Outcome.KILLED_DOG) {
+					// what is eaten or killed never moved, so it is still at its own cell
+					int cell = riskIndex.get(toX, toY);
+					counts[cell]++;
+					score += riskEntitys[cell].getEntity().getScore();
+				}
+				if (outcome == AnimalRules.Outcome.WALKED || outcome == AnimalRules.Outcome.ATE) {
+					positions[i] = PositionIndex.key(toX, toY);
+				} else if (outcome == AnimalRules.Outcome.KILLED_DOG) {
+					copy.putHealth(x, y, copy.getHealth(toX, toY));
+					copy.removeHealth(toX, toY);
+				} else if (outcome == AnimalRules.Outcome.FOUGHT) {
+					copy.rewriteMapChar(x, y, Entitys.EMPTY);
+					positions[i] = DEAD;
+				}
+			}
+		}
+		return score;
+	}
+
+	/**
+	 * Checks if Martian animals can eat or kill an entity.
+	 *
+	 * @param entitys entity to check
+	 * @return true for plants, cattle and dogs
+	 */
+	private static boolean atRisk(Entitys entitys) {
+		Entity entity = entitys.getEntity();
+		return entity instanceof VegetableType || entity instanceof EarthAnimals;
+	}
+}
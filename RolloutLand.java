@@ -0,0 +1,179 @@
+/**
+ * This class is a copy of a Martian land that animals can move in for one
+ * rollout of a risk estimate, while the land itself is only read. The map
+ * is split into square tiles, and a tile is copied from the land the first
+ * time a cell of it is written, so a rollout only pays for the tiles its
+ * animals touch. Health changes are kept in a small table read before the
+ * land. Resetting hands the copied tiles back for the next rollout, so no
+ * garbage is made from one rollout to the next.
+ *
+ * @author Soma Hayasaka,hayasakas@student.unimelb.edu.au,1396301
+ *
+ */
+import java.util.Arrays;
+
+import entities.Entitys;
+
+public class RolloutLand implements AnimalLand {
+	/** Tiles are 64 cells wide and high */
+	private static final int TILE_SHIFT = 6;
+	private static final int TILE_SIZE = 1 << TILE_SHIFT;
+	private static final int TILE_MASK = TILE_SIZE - 1;
+
+	private final MartianLand land;
+	private final int width;
+	private final int height;
+	/** Number of tiles in a row of tiles */
+	private final int tilesX;
+	/** Copied tiles, row by row, null where the land is read */
+	private final char[][] tiles;
+	/** Index of each copied tile, in the order they were copied */
+	private int[] copied = new int[16];
+	private int copiedCount = 0;
+	/** Tiles handed back by reset(), reused before new ones are made */
+	private char[][] spare = new char[16][];
+	private int spareCount = 0;
+	/** Health changed in the rollout, MoveJournal.NO_HEALTH where removed */
+	private final HealthStore healths = new HealthStore();
+	/** Behaviour points won in the rollout */
+	private int behaviorScore = 0;
+
+	/**
+	 * Creates a copy of a Martian land that copies nothing yet.
+	 *
+	 * @param land Martian land to copy from, which must not change while the copy is used
+	 */
+	public RolloutLand(MartianLand land) {
+		this.land = land;
+		this.width = land.getWidth();
+		this.height = land.getHeight();
+		this.tilesX = (width + TILE_MASK) >> TILE_SHIFT;
+		this.tiles = new char[tilesX * ((height + TILE_MASK) >> TILE_SHIFT)][];
+	}
+
+	/**
+	 * Makes the copy the same as the land again.
+	 */
+	public void reset() {
+		for (int i = 0; i < copiedCount; i++) {
+			if (spareCount == spare.length) {
+				spare = Arrays.copyOf(spare, spareCount * 2);
+			}
+			spare[spareCount++] = tiles[copied[i]];
+			tiles[copied[i]] = null;
+		}
+		copiedCount = 0;
+		healths.clear();
+		behaviorScore = 0;
+	}
+
+	/**
+	 * Gets the behaviour points won since the last reset.
+	 *
+	 * @return Behaviour points
+	 */
+	public int getBehaviorScore() {
+		return this.behaviorScore;
+	}
+
+	@Override
+	public char getSymbol(int x, int y) {
+		if (x < 0 || y < 0 || x >= width || y >= height) {
+			return Entitys.BOUNDARY;
+		}
+		char[] tile = tiles[(y >> TILE_SHIFT) * tilesX + (x >> TILE_SHIFT)];
+		return tile == null ? land.getSymbol(x, y) : tile[(y & TILE_MASK) << TILE_SHIFT | (x & TILE_MASK)];
+	}
+
+	@Override
+	public int getHealth(int x, int y) {
+		if (!healths.contains(x, y)) {
+			return land.getHealth(x, y);
+		}
+		int v = healths.get(x, y);
+		return v == MoveJournal.NO_HEALTH ? 0 : v;
+	}
+
+	@Override
+	public void move(MartianLandPossision position, Direction direction) {
+		int x = position.get_x();
+		int y = position.get_y();
+		write(x + direction.get_x(), y + direction.get_y(), getSymbol(x, y));
+		write(x, y, Entitys.EMPTY);
+	}
+
+	@Override
+	public void moveHealth(MartianLandPossision posission, Direction direction) {
+		int x = posission.get_x();
+		int y = posission.get_y();
+		int health = getHealth(x, y);
+		healths.put(x, y, MoveJournal.NO_HEALTH);
+		healths.put(x + direction.get_x(), y + direction.get_y(), health);
+	}
+
+	@Override
+	public void addHealth(int x, int y, int v) {
+		healths.put(x, y, getHealth(x, y) + v);
+	}
+
+	@Override
+	public void putHealth(int x, int y, int v) {
+		healths.put(x, y, v);
+	}
+
+	@Override
+	public void removeHealth(int x, int y) {
+		healths.put(x, y, MoveJournal.NO_HEALTH);
+	}
+
+	@Override
+	public void rewriteMapChar(int x, int y, char symbol) {
+		write(x, y, symbol);
+	}
+
+	@Override
+	public void addBehaviorScore(int score) {
+		behaviorScore += score;
+	}
+
+	/**
+	 * Writes a symbol, copying its tile first if it is still read from the land.
+	 *
+	 * @param x      X coordinate
+	 * @param y      Y coordinate
+	 * @param symbol symbol to write
+	 */
+	private void write(int x, int y, char symbol) {
+		int index = (y >> TILE_SHIFT) * tilesX + (x >> TILE_SHIFT);
+		char[] tile = tiles[index];
+		if (tile == null) {
+			tile = copy(index);
+		}
+		tile[(y & TILE_MASK) << TILE_SHIFT | (x & TILE_MASK)] = symbol;
+	}
+
+	/**
+	 * Copies a tile from the land.
+	 *
+	 * @param index index of the tile
+	 * @return Copied tile
+	 */
+	private char[] copy(int index) {
+		char[] tile = spareCount > 0 ? spare[--spareCount] : new char[TILE_SIZE * TILE_SIZE];
+		int left = (index % tilesX) << TILE_SHIFT;
+		int top = (index / tilesX) << TILE_SHIFT;
+		int right = Math.min(width, left + TILE_SIZE);
+		int bottom = Math.min(height, top + TILE_SIZE);
+		for (int y = top; y < bottom; y++) {
+			for (int x = left; x < right; x++) {
+				tile[(y - top) << TILE_SHIFT | (x - left)] = land.getSymbol(x, y);
+			}
+		}
+		if (copiedCount == copied.length) {
+			copied = Arrays.copyOf(copied, copiedCount * 2);
+		}
+		copied[copiedCount++] = index;
+		tiles[index] = tile;
+		return tile;
+	}
+}
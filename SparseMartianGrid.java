@@ -0,0 +1,153 @@
+/**
+ * This class stores a mostly empty Martian land map.
+ * Each row is cut into segments of the same length, and only segments
+ * holding something other than empty land are kept. A segment is
+ * allocated when something is written into it and released when it
+ * becomes empty again, so the grid grows with the entities, not the area.
+ * The number of cells holding something is kept for every segment, so a
+ * write of empty land knows at once whether the segment is now empty.
+ *
+ * @author Soma Hayasaka,hayasakas@student.unimelb.edu.au,1396301
+ *
+ */
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+import entities.Entitys;
+
+public class SparseMartianGrid extends MartianGrid {
+	/** Shift from a column to its segment */
+	private static final int SEGMENT_SHIFT = 8;
+	/** Number of cells in a segment */
+	private static final int SEGMENT = 1 << SEGMENT_SHIFT;
+
+	/** Number of segments in a row */
+	private final int segmentsPerRow;
+	/** Segments row by row, null where every cell is empty */
+	private final byte[][] segments;
+	/** Number of cells of each segment holding something other than empty land */
+	private final short[] filled;
+
+	/**
+	 * Creates an empty grid, every cell holding empty land.
+	 *
+	 * @param width  Number of cells in a row
+	 * @param height Number of rows
+	 */
+	public SparseMartianGrid(int width, int height) {
+		super(width, height, null);
+		this.segmentsPerRow = (width + SEGMENT - 1) >>> SEGMENT_SHIFT;
+		this.segments = new byte[Math.multiplyExact(segmentsPerRow, height)][];
+		this.filled = new short[segments.length];
+	}
+
+	/**
+	 * Checks if a sparse grid of a given size can be created.
+	 *
+	 * @param width  Number of cells in a row
+	 * @param height Number of rows
+	 * @return true if the segment table fits in one array
+	 */
+	public static boolean fits(long width, long height) {
+		return ((width + SEGMENT - 1) >>> SEGMENT_SHIFT) * height <= Integer.MAX_VALUE - 8;
+	}
+
+	@Override
+	public char get(int x, int y) {
+		byte[] segment = segments[y * segmentsPerRow + (Objects.checkIndex(x, getWidth()) >>> SEGMENT_SHIFT)];
+		return segment == null ? Entitys.EMPTY : (char) (segment[x & (SEGMENT - 1)] & 0xff);
+	}
+
+	@Override
+	public void set(int x, int y, char symbol) {
+		int index = y * segmentsPerRow + (Objects.checkIndex(x, getWidth()) >>> SEGMENT_SHIFT);
+		byte[] segment = segments[index];
+		if (segment == null) {
+			if (symbol == Entitys.EMPTY) {
+				return;
+			}
+			segment = new byte[SEGMENT];
+			Arrays.fill(segment, (byte) Entitys.EMPTY);
+			segments[index] = segment;
+		}
+		int cell = x & (SEGMENT - 1);
+		boolean wasEmpty = segment[cell] == (byte) Entitys.EMPTY;
+		segment[cell] = (byte) symbol;
+		if (symbol != Entitys.EMPTY) {
+			if (wasEmpty) {
+				filled[index]++;
+			}
+		} else if (!wasEmpty && --filled[index] == 0) {
+			segments[index] = null;
+		}
+	}
+
+	@Override
+	public void setRow(int y, ByteBuffer buffer, int offset) {
+		for (int s = 0; s < segmentsPerRow; s++) {
+			int from = s << SEGMENT_SHIFT;
+			int length = Math.min(SEGMENT, getWidth() - from);
+			int count = 0;
+			for (int i = 0; i < length; i++) {
+				if (buffer.get(offset + from + i) != (byte) Entitys.EMPTY) {
+					count++;
+				}
+			}
+			filled[y * segmentsPerRow + s] = (short) count;
+			if (count == 0) {
+				segments[y * segmentsPerRow + s] = null;
+				continue;
+			}
+			byte[] segment = new byte[SEGMENT];
+			buffer.get(offset + from, segment, 0, length);
+			// the end of the last segment lies past the row and stays empty
+			Arrays.fill(segment, length, SEGMENT, (byte) Entitys.EMPTY);
+			segments[y * segmentsPerRow + s] = segment;
+		}
+	}
+
+	@Override
+	public void copyRow(int y, byte[] dst, int offset) {
+		for (int s = 0; s < segmentsPerRow; s++) {
+			int from = s << SEGMENT_SHIFT;
+			int length = Math.min(SEGMENT, getWidth() - from);
+			byte[] segment = segments[y * segmentsPerRow + s];
+			if (segment == null) {
+				Arrays.fill(dst, offset + from, offset + from + length, (byte) Entitys.EMPTY);
+			} else {
+				System.arraycopy(segment, 0, dst, offset + from, length);
+			}
+		}
+	}
+
+	@Override
+	public String getRow(int y) {
+		byte[] row = new byte[getWidth()];
+		copyRow(y, row, 0);
+		return new String(row, StandardCharsets.ISO_8859_1);
+	}
+
+	@Override
+	public void setCells(ByteBuffer buffer, int offset) {
+		for (int y = 0; y < getHeight(); y++) {
+			setRow(y, buffer, offset + y * getWidth());
+		}
+	}
+
+	/**
+	 * Gets a read-only copy of the raw cells, row after row.
+	 * The whole map is expanded, so this only works for maps that fit in one array.
+	 *
+	 * @return Buffer over the expanded cells
+	 */
+	@Override
+	public ByteBuffer getCells() {
+		byte[] cells = new byte[Math.multiplyExact(getWidth(), getHeight())];
+		for (int y = 0; y < getHeight(); y++) {
+			copyRow(y, cells, y * getWidth());
+		}
+		return ByteBuffer.wrap(cells).asReadOnlyBuffer();
+	}
+}
@@ -0,0 +1,185 @@
+/**
+ * This class is a stripe of rows of a Martian land that animals can move
+ * in without changing the land itself. Changes are kept in small tables
+ * that are read before the land, and every call is logged so that the
+ * same calls can be made on the land afterwards. Stripes that are at least
+ * two rows apart never touch the same cell, so they can be worked on by
+ * several threads at once while the land is only read.
+ *
+ * @author Soma Hayasaka,hayasakas@student.unimelb.edu.au,1396301
+ *
+ */
+import java.util.Arrays;
+
+public class StripeLand implements AnimalLand {
+	/** Logged call of move(), a and b hold the direction */
+	private static final byte MOVE = 0;
+	/** Logged call of moveHealth(), a and b hold the direction */
+	private static final byte MOVE_HEALTH = 1;
+	/** Logged call of addHealth(), a holds the health added */
+	private static final byte ADD_HEALTH = 2;
+	/** Logged call of putHealth(), a holds the health */
+	private static final byte PUT_HEALTH = 3;
+	/** Logged call of removeHealth() */
+	private static final byte REMOVE_HEALTH = 4;
+	/** Logged call of rewriteMapChar(), a holds the symbol */
+	private static final byte REWRITE = 5;
+	/** Logged call of addBehaviorScore(), a holds the points */
+	private static final byte SCORE = 6;
+
+	private final MartianLand land;
+	/** Symbols changed in the stripe */
+	private final CellMap cells = new CellMap();
+	/** Health changed in the stripe, MoveJournal.NO_HEALTH where removed */
+	private final HealthStore healths = new HealthStore();
+
+	/** Kind of each logged call */
+	private byte[] calls = new byte[64];
+	/** X coordinate of each logged call */
+	private int[] xs = new int[64];
+	/** Y coordinate of each logged call */
+	private int[] ys = new int[64];
+	/** First argument of each logged call */
+	private int[] as = new int[64];
+	/** Second argument of each logged call */
+	private int[] bs = new int[64];
+	/** Number of logged calls */
+	private int size = 0;
+
+	/**
+	 * Creates a stripe over a Martian land.
+	 *
+	 * @param land Martian land read until the stripe is committed
+	 */
+	public StripeLand(MartianLand land) {
+		this.land = land;
+	}
+
+	@Override
+	public char getSymbol(int x, int y) {
+		return cells.contains(x, y) ? (char) cells.get(x, y) : land.getSymbol(x, y);
+	}
+
+	@Override
+	public int getHealth(int x, int y) {
+		if (!healths.contains(x, y)) {
+			return land.getHealth(x, y);
+		}
+		int v = healths.get(x, y);
+		return v == MoveJournal.NO_HEALTH ? 0 : v;
+	}
+
+	@Override
+	public void move(MartianLandPossision position, Direction direction) {
+		int x = position.get_x();
+		int y = position.get_y();
+		cells.put(x + direction.get_x(), y + direction.get_y(), getSymbol(x, y));
+		cells.put(x, y, '.');
+		log(MOVE, x, y, direction.get_x(), direction.get_y());
+	}
+
+	@Override
+	public void moveHealth(MartianLandPossision posission, Direction direction) {
+		int x = posission.get_x();
+		int y = posission.get_y();
+		int health = getHealth(x, y);
+		healths.put(x, y, MoveJournal.NO_HEALTH);
+		healths.put(x + direction.get_x(), y + direction.get_y(), health);
+		log(MOVE_HEALTH, x, y, direction.get_x(), direction.get_y());
+	}
+
+	@Override
+	public void addHealth(int x, int y, int v) {
+		healths.put(x, y, getHealth(x, y) + v);
+		log(ADD_HEALTH, x, y, v, 0);
+	}
+
+	@Override
+	public void putHealth(int x, int y, int v) {
+		healths.put(x, y, v);
+		log(PUT_HEALTH, x, y, v, 0);
+	}
+
+	@Override
+	public void removeHealth(int x, int y) {
+		healths.put(x, y, MoveJournal.NO_HEALTH);
+		log(REMOVE_HEALTH, x, y, 0, 0);
+	}
+
+	@Override
+	public void rewriteMapChar(int x, int y, char symbol) {
+		cells.put(x, y, symbol);
+		log(REWRITE, x, y, symbol, 0);
+	}
+
+	@Override
+	public void addBehaviorScore(int score) {
+		log(SCORE, 0, 0, score, 0);
+	}
+
+	/**
+	 * Makes every logged call on the land in order and empties the stripe.
+	 */
+	public void commit() {
+		for (int i = 0; i < size; i++) {
+			switch (calls[i]) {
+				case MOVE:
+					land.move(new MartianLandPossision(xs[i], ys[i]), direction(as[i], bs[i]));
+					break;
+				case MOVE_HEALTH:
+					land.moveHealth(new MartianLandPossision(xs[i], ys[i]), direction(as[i], bs[i]));
+					break;
+				case ADD_HEALTH:
+					land.addHealth(xs[i], ys[i], as[i]);
+					break;
+				case PUT_HEALTH:
+					land.putHealth(xs[i], ys[i], as[i]);
+					break;
+				case REMOVE_HEALTH:
+					land.removeHealth(xs[i], ys[i]);
+					break;
+				case REWRITE:
+					land.rewriteMapChar(xs[i], ys[i], (char) as[i]);
+					break;
+				default:
+					land.addBehaviorScore(as[i]);
+					break;
+			}
+		}
+		size = 0;
+		cells.clear();
+		healths.clear();
+	}
+
+	/**
+	 * Logs a call.
+	 *
+	 * @param call kind of call
+	 * @param x    X coordinate
+	 * @param y    Y coordinate
+	 * @param a    first argument
+	 * @param b    second argument
+	 */
+	private void log(byte call, int x, int y, int a, int b) {
+		if (size == calls.length) {
+			int length = size * 2;
+			calls = Arrays.copyOf(calls, length);
+			xs = Arrays.copyOf(xs, length);
+			ys = Arrays.copyOf(ys, length);
+			as = Arrays.copyOf(as, length);
+			bs = Arrays.copyOf(bs, length);
+		}
+		calls[size] = call;
+		xs[size] = x;
+		ys[size] = y;
+		as[size] = a;
+		bs[size] = b;
+		size++;
+	}
+
+	private static Direction direction(int x, int y) {
+		Direction direction = new Direction(0);
+		direction.set(x, y);
+		return direction;
+	}
+}
@@ -0,0 +1,326 @@
+/**
+ * This class reads a Martian land map from its file one tile at a time.
+ * The map is split into square tiles that are read on first access and
+ * kept in least recently used order. Once more tiles are held than the
+ * memory budget allows, the oldest tile is dropped, and a tile that was
+ * changed is first written to a scratch file so it can be read back later.
+ * The map file itself is never written, saving streams every row to a new file.
+ * A tiled grid is not safe for use by several threads.
+ *
+ * @author Soma Hayasaka,hayasakas@student.unimelb.edu.au,1396301
+ *
+ */
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+public class TiledMartianGrid extends MartianGrid {
+	/** Shift from a coordinate to its tile */
+	private static final int TILE_SHIFT = 8;
+	/** Number of cells along each side of a tile */
+	private static final int TILE = 1 << TILE_SHIFT;
+	/** Bytes held by one tile */
+	private static final int TILE_BYTES = TILE * TILE;
+	/** Fewest tiles held whatever the budget, enough for a unit and its neighbours */
+	private static final int MIN_TILES = 4;
+
+	/**
+	 * A tile of the map held in memory.
+	 */
+	private static final class Tile {
+		/** Index of the tile, row of tiles after row of tiles */
+		final int index;
+		/** Cells of the tile, TILE cells per row */
+		final byte[] cells = new byte[TILE_BYTES];
+		/** True if changed since it was read */
+		boolean dirty = false;
+
+		Tile(int index) {
+			this.index = index;
+		}
+	}
+
+	/** Map file the tiles are read from */
+	private final FileChannel source;
+	/** Bytes taken by one row and its line ending in the map file */
+	private final long stride;
+	/** Offset of each row in the map file, null if every row takes stride bytes */
+	private final long[] starts;
+	/** Number of tiles in a row of tiles */
+	private final int tilesPerRow;
+
+	/** Tiles held in memory, least recently used first */
+	private final LinkedHashMap<Integer, Tile> tiles;
+	/** Tile used last, checked before the table */
+	private Tile last = null;
+
+	/** Scratch file holding changed tiles that were dropped, opened when first needed */
+	private FileChannel scratch = null;
+	/** Slot of each tile in the scratch file, -1 if it has none */
+	private final int[] slots;
+	/** Number of slots used in the scratch file */
+	private int slotCount = 0;
+
+	/** Number of tiles read */
+	private long loads = 0;
+	/** Number of tiles dropped */
+	private long evictions = 0;
+
+	/**
+	 * Opens a tiled grid over a map file that has already been validated,
+	 * whose rows may end in different line endings.
+	 *
+	 * @param file   map file
+	 * @param width  Number of cells in a row
+	 * @param height Number of rows
+	 * @param stride bytes taken by one row and its line ending, if every row takes the same
+	 * @param starts offset of each row in the file, null if every row takes stride bytes
+	 * @param budget bytes of tiles to hold in memory
+	 * @throws IOException if the file cannot be opened
+	 */
+	public TiledMartianGrid(Path file, int width, int height, long stride, long[] starts, long budget)
+			throws IOException {
+		super(width, height, null);
+		this.source = FileChannel.open(file, StandardOpenOption.READ);
+		this.stride = stride;
+		this.starts = starts;
+		this.tilesPerRow = (width + TILE - 1) >>> TILE_SHIFT;
+		this.slots = new int[Math.multiplyExact(tilesPerRow, (height + TILE - 1) >>> TILE_SHIFT)];
+		Arrays.fill(slots, -1);
+		final int capacity = (int) Math.max(MIN_TILES, Math.min(slots.length, budget / TILE_BYTES));
+		this.tiles = new LinkedHashMap<Integer, Tile>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, Tile> eldest) {
+				if (size() <= capacity) {
+					return false;
+				}
+				evict(eldest.getValue());
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Gets the number of tiles read so far.
+	 *
+	 * @return Number of tiles read
+	 */
+	public long getLoads() {
+		return this.loads;
+	}
+
+	/**
+	 * Gets the number of tiles dropped so far.
+	 *
+	 * @return Number of tiles dropped
+	 */
+	public long getEvictions() {
+		return this.evictions;
+	}
+
+	/**
+	 * Gets the number of tiles held in memory.
+	 *
+	 * @return Number of tiles held
+	 */
+	public int getResidentTiles() {
+		return tiles.size();
+	}
+
+	@Override
+	public char get(int x, int y) {
+		Tile tile = tile(Objects.checkIndex(x, getWidth()), Objects.checkIndex(y, getHeight()));
+		return (char) (tile.cells[((y & (TILE - 1)) << TILE_SHIFT) | (x & (TILE - 1))] & 0xff);
+	}
+
+	@Override
+	public void set(int x, int y, char symbol) {
+		Tile tile = tile(Objects.checkIndex(x, getWidth()), Objects.checkIndex(y, getHeight()));
+		tile.cells[((y & (TILE - 1)) << TILE_SHIFT) | (x & (TILE - 1))] = (byte) symbol;
+		tile.dirty = true;
+	}
+
+	@Override
+	public void setRow(int y, ByteBuffer buffer, int offset) {
+		for (int x = 0; x < getWidth(); x += TILE) {
+			Tile tile = tile(x, y);
+			buffer.get(offset + x, tile.cells, (y & (TILE - 1)) << TILE_SHIFT, Math.min(TILE, getWidth() - x));
+			tile.dirty = true;
+		}
+	}
+
+	/**
+	 * Copies the raw bytes of a row into an array.
+	 * Rows are read straight from the files without taking tiles into memory,
+	 * so a scan of the whole map does not push out the tiles in use.
+	 */
+	@Override
+	public void copyRow(int y, byte[] dst, int offset) {
+		readFully(source, ByteBuffer.wrap(dst, offset, getWidth()), start(y));
+		int firstTile = (y >>> TILE_SHIFT) * tilesPerRow;
+		int rowInTile = (y & (TILE - 1)) << TILE_SHIFT;
+		for (int t = 0; t < tilesPerRow; t++) {
+			int x = t << TILE_SHIFT;
+			int length = Math.min(TILE, getWidth() - x);
+			Tile tile = tiles.get(firstTile + t);
+			if (tile != null) {
+				System.arraycopy(tile.cells, rowInTile, dst, offset + x, length);
+			} else if (slots[firstTile + t] >= 0) {
+				readFully(scratch, ByteBuffer.wrap(dst, offset + x, length),
+						(long) slots[firstTile + t] * TILE_BYTES + rowInTile);
+			}
+		}
+	}
+
+	@Override
+	public String getRow(int y) {
+		byte[] row = new byte[getWidth()];
+		copyRow(y, row, 0);
+		return new String(row, StandardCharsets.ISO_8859_1);
+	}
+
+	@Override
+	public void setCells(ByteBuffer buffer, int offset) {
+		for (int y = 0; y < getHeight(); y++) {
+			setRow(y, buffer, offset + y * getWidth());
+		}
+	}
+
+	/**
+	 * Gets a read-only copy of the raw cells, row after row.
+	 * The whole map is expanded, so this only works for maps that fit in one array.
+	 *
+	 * @return Buffer over the expanded cells
+	 */
+	@Override
+	public ByteBuffer getCells() {
+		byte[] cells = new byte[Math.multiplyExact(getWidth(), getHeight())];
+		for (int y = 0; y < getHeight(); y++) {
+			copyRow(y, cells, y * getWidth());
+		}
+		return ByteBuffer.wrap(cells).asReadOnlyBuffer();
+	}
+
+	/**
+	 * Closes the map file and deletes the scratch file.
+	 *
+	 * @throws IOException if IO error occurs
+	 */
+	public void close() throws IOException {
+		try {
+			source.close();
+		} finally {
+			if (scratch != null) {
+				scratch.close();
+			}
+		}
+	}
+
+	/**
+	 * Gets the tile holding a cell, reading it if it is not in memory.
+	 *
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @return Tile holding the cell
+	 */
+	private Tile tile(int x, int y) {
+		int index = (y >>> TILE_SHIFT) * tilesPerRow + (x >>> TILE_SHIFT);
+		if (last != null && last.index == index) {
+			return last;
+		}
+		Tile tile = tiles.get(index);
+		if (tile == null) {
+			tile = read(index);
+			tiles.put(index, tile);
+		}
+		last = tile;
+		return tile;
+	}
+
+	/**
+	 * Reads a tile from the scratch file if it was changed, or else from the map file.
+	 *
+	 * @param index index of the tile
+	 * @return Tile read
+	 */
+	private Tile read(int index) {
+		loads++;
+		Tile tile = new Tile(index);
+		int fromX = (index % tilesPerRow) << TILE_SHIFT;
+		int fromY = (index / tilesPerRow) << TILE_SHIFT;
+		if (slots[index] >= 0) {
+			readFully(scratch, ByteBuffer.wrap(tile.cells), (long) slots[index] * TILE_BYTES);
+			return tile;
+		}
+		int width = Math.min(TILE, getWidth() - fromX);
+		int rows = Math.min(TILE, getHeight() - fromY);
+		for (int r = 0; r < rows; r++) {
+			readFully(source, ByteBuffer.wrap(tile.cells, r << TILE_SHIFT, width), start(fromY + r) + fromX);
+		}
+		return tile;
+	}
+
+	/**
+	 * Gets the offset of a row in the map file.
+	 *
+	 * @param y row
+	 * @return Offset of the first cell of the row
+	 */
+	private long start(int y) {
+		return starts == null ? y * stride : starts[y];
+	}
+
+	/**
+	 * Drops a tile, keeping it in the scratch file if it was changed.
+	 *
+	 * @param tile tile to drop
+	 */
+	private void evict(Tile tile) {
+		evictions++;
+		if (tile == last) {
+			last = null;
+		}
+		if (!tile.dirty) {
+			return;
+		}
+		try {
+			if (scratch == null) {
+				File file = File.createTempFile("martian", ".tiles");
+				scratch = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE,
+						StandardOpenOption.DELETE_ON_CLOSE);
+			}
+			if (slots[tile.index] < 0) {
+				slots[tile.index] = slotCount++;
+			}
+			ByteBuffer buffer = ByteBuffer.wrap(tile.cells);
+			long position = (long) slots[tile.index] * TILE_BYTES;
+			while (buffer.hasRemaining()) {
+				scratch.write(buffer, position + buffer.position());
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) {
+		try {
+			long start = position - buffer.position();
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, start + buffer.position()) < 0) {
+					throw new IOException("Map file ended early");
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
@@ -6,12 +6,48 @@
  */
 public class UnknownEntityException extends Exception {
 
+    /** Row of the first offending cell, -1 if unknown */
+    private final int row;
+    /** Column of the first offending cell, -1 if unknown */
+    private final int column;
+
     /**
      * Constructs the exception with given message.
      *
      * @param message Error message
      */
     public UnknownEntityException(String message) {
+        this(message, -1, -1);
+    }
+
+    /**
+     * Constructs the exception with given message and location.
+     *
+     * @param message Error message
+     * @param row     Row of the first offending cell, counted from 0
+     * @param column  Column of the first offending cell, counted from 0
+     */
+    public UnknownEntityException(String message, int row, int column) {
         super(message);
+        this.row = row;
+        this.column = column;
+    }
+
+    /**
+     * Gets the row of the first offending cell.
+     *
+     * @return Row counted from 0, -1 if unknown
+     */
+    public int getRow() {
+        return this.row;
+    }
+
+    /**
+     * Gets the column of the first offending cell.
+     *
+     * @return Column counted from 0, -1 if unknown
+     */
+    public int getColumn() {
+        return this.column;
     }
 }
@@ -0,0 +1,475 @@
+/**
+ * This class keeps a write-ahead log of every change made to a Martian land,
+ * so that a mission can be recovered after a crash. Each change is appended
+ * to a buffer in memory as a fixed size record holding the new value, and a
+ * background thread writes the finished steps every few milliseconds with
+ * one write and one force, so a change does not wait for the disk.
+ * After many changes the land is saved as a snapshot and the log is emptied,
+ * so recovery never replays more than that many changes.
+ *
+ * Layout, all numbers big-endian:
+ * header (magic, version), then frames of a record byte count, the
+ * checksum of the records and the records. A record is a kind, the
+ * coordinates and the new value, so replaying a record twice is harmless.
+ *
+ * @author Soma Hayasaka,hayasakas@student.unimelb.edu.au,1396301
+ *
+ */
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+public class WriteAheadLog implements Closeable {
+	/** File name extension of write-ahead logs, added to the map file name */
+	public static final String EXTENSION = ".wal";
+	/** Default time between writes, in milliseconds */
+	public static final int DEFAULT_COMMIT_MILLIS = 10;
+	/** Default number of changes between snapshots */
+	public static final long DEFAULT_COMPACT_RECORDS = 1L << 22;
+
+	/** "MWAL", marks a write-ahead log */
+	private static final int MAGIC = 0x4D57414C;
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 8;
+	/** Bytes before the records of a frame */
+	private static final int FRAME_HEADER_BYTES = 8;
+	/** Bytes taken by one record */
+	private static final int RECORD_BYTES = 13;
+	/** Largest part of the log mapped at once while replaying */
+	private static final int REPLAY_WINDOW = 1 << 30;
+
+	/** Change of the symbol in a cell */
+	private static final byte CELL = 0;
+	/** Change of the health at a position, MoveJournal.NO_HEALTH to remove it */
+	private static final byte HEALTH = 1;
+	/** Change of the behaviour score, holding the new score */
+	private static final byte SCORE = 2;
+
+	private final FileChannel channel;
+	/** Martian land saved when the log is emptied */
+	private final MartianLand land;
+	/** File name of the snapshot the log starts from */
+	private final String snapshotFile;
+	private final int commitMillis;
+	private final long compactRecords;
+	private final Thread worker;
+
+	/** Records not written yet */
+	private ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+	/** Buffer written last, reused for the next records */
+	private ByteBuffer spare = ByteBuffer.allocate(1 << 20);
+	/** End of the last finished step in the buffer */
+	private int stepEnd = 0;
+	/** Held while frames are written, taken before the buffer lock */
+	private final Object writeLock = new Object();
+
+	private volatile boolean closed = false;
+	/** First error of writing the log, thrown again by close() */
+	private volatile IOException failure = null;
+
+	/** Number of changes replayed when the log was opened */
+	private long recovered = 0;
+	/** Number of changes recorded since the log was emptied */
+	private long sinceCompaction = 0;
+	/** Number of changes recorded */
+	private long records = 0;
+	/** Number of frames written */
+	private long commits = 0;
+	/** Number of snapshots taken */
+	private long compactions = 0;
+
+	/**
+	 * Opens the write-ahead log of a map file with the default timings,
+	 * replaying the changes it holds onto the land first.
+	 *
+	 * @param mapFile file name of the map the land was loaded from
+	 * @param land    Martian land loaded from the log snapshot if there is one, or else from the map
+	 * @return Opened log
+	 * @throws IOException if the log cannot be opened or is damaged
+	 */
+	public static WriteAheadLog open(String mapFile, MartianLand land) throws IOException {
+		return new WriteAheadLog(mapFile, land, DEFAULT_COMMIT_MILLIS, DEFAULT_COMPACT_RECORDS);
+	}
+
+	/**
+	 * Opens the write-ahead log of a map file, replaying the changes it holds onto the land first.
+	 *
+	 * @param mapFile        file name of the map the land was loaded from
+	 * @param land           Martian land loaded from the log snapshot if there is one, or else from the map
+	 * @param commitMillis   time between writes, in milliseconds
+	 * @param compactRecords number of changes between snapshots
+	 * @throws IOException if the log cannot be opened or is damaged
+	 */
+	public WriteAheadLog(String mapFile, MartianLand land, int commitMillis, long compactRecords) throws IOException {
+		this.land = land;
+		this.snapshotFile = snapshotName(mapFile);
+		this.commitMillis = Math.max(1, commitMillis);
+		this.compactRecords = Math.max(1, compactRecords);
+		this.channel = FileChannel.open(Paths.get(mapFile + EXTENSION), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			if (channel.size() == 0) {
+				ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(VERSION);
+				header.flip();
+				writeFully(header, 0);
+				channel.force(false);
+			} else {
+				recovered = replay();
+				sinceCompaction = recovered;
+			}
+			channel.position(channel.size());
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		this.worker = new Thread(this::commitLoop, "write-ahead-log");
+		this.worker.setDaemon(true);
+		this.worker.start();
+	}
+
+	/**
+	 * Gets the file name of the snapshot a write-ahead log starts from.
+	 *
+	 * @param mapFile file name of the map
+	 * @return File name of the snapshot
+	 */
+	public static String snapshotName(String mapFile) {
+		return mapFile + EXTENSION + MapSnapshot.EXTENSION;
+	}
+
+	/**
+	 * Checks if a map file was left with a write-ahead log snapshot by an earlier run.
+	 *
+	 * @param mapFile file name of the map
+	 * @return true if the snapshot exists
+	 */
+	public static boolean hasSnapshot(String mapFile) {
+		return new File(snapshotName(mapFile)).isFile();
+	}
+
+	/**
+	 * Checks if a map file was left with changes to recover by a run that did not finish.
+	 *
+	 * @param mapFile file name of the map
+	 * @return true if the log holds changes or its snapshot exists
+	 */
+	public static boolean hasChanges(String mapFile) {
+		return new File(mapFile + EXTENSION).length() > HEADER_BYTES || hasSnapshot(mapFile);
+	}
+
+	/**
+	 * Deletes the write-ahead log of a map file and its snapshot.
+	 *
+	 * @param mapFile file name of the map
+	 * @throws IOException if IO error occurs
+	 */
+	public static void delete(String mapFile) throws IOException {
+		Files.deleteIfExists(Paths.get(mapFile + EXTENSION));
+		Files.deleteIfExists(Paths.get(snapshotName(mapFile)));
+	}
+
+	/**
+	 * Records a change of the symbol in a cell.
+	 *
+	 * @param x      X coordinate
+	 * @param y      Y coordinate
+	 * @param symbol New symbol
+	 */
+	public void cell(int x, int y, char symbol) {
+		append(CELL, x, y, symbol);
+	}
+
+	/**
+	 * Records a change of the health at a position.
+	 *
+	 * @param x X coordinate
+	 * @param y Y coordinate
+	 * @param v New health, MoveJournal.NO_HEALTH if removed
+	 */
+	public void health(int x, int y, int v) {
+		append(HEALTH, x, y, v);
+	}
+
+	/**
+	 * Records a change of the behaviour score.
+	 *
+	 * @param score New behaviour score
+	 */
+	public void score(int score) {
+		append(SCORE, 0, 0, score);
+	}
+
+	/**
+	 * Finishes the current step. Only finished steps are written, so a
+	 * recovered land never holds half of a step. Saves a snapshot and empties
+	 * the log once enough changes have been recorded.
+	 */
+	public void endStep() {
+		boolean due;
+		synchronized (this) {
+			stepEnd = buffer.position();
+			due = sinceCompaction >= compactRecords;
+		}
+		if (due) {
+			compact();
+		}
+	}
+
+	/**
+	 * Writes every finished step now and forces it onto the disk.
+	 */
+	public void flush() {
+		synchronized (writeLock) {
+			ByteBuffer frame;
+			synchronized (this) {
+				if (stepEnd == 0 || failure != null) {
+					return;
+				}
+				// the unfinished step moves to the spare buffer, which becomes the buffer
+				frame = buffer;
+				spare.clear();
+				if (spare.capacity() < buffer.capacity()) {
+					spare = ByteBuffer.allocate(buffer.capacity());
+				}
+				spare.put(frame.array(), stepEnd, frame.position() - stepEnd);
+				buffer = spare;
+				frame.limit(stepEnd).position(0);
+				stepEnd = 0;
+			}
+			try {
+				ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_BYTES);
+				header.putInt(frame.remaining()).putInt(checksum(frame)).flip();
+				ByteBuffer[] parts = { header, frame };
+				long total = header.remaining() + frame.remaining();
+				while (total > 0) {
+					total -= channel.write(parts);
+				}
+				channel.force(false);
+				commits++;
+			} catch (IOException e) {
+				failure = e;
+			}
+			spare = frame;
+		}
+	}
+
+	/**
+	 * Gets the number of changes replayed when the log was opened.
+	 *
+	 * @return Number of changes recovered
+	 */
+	public long getRecovered() {
+		return this.recovered;
+	}
+
+	/**
+	 * Gets the number of changes recorded.
+	 *
+	 * @return Number of changes
+	 */
+	public synchronized long getRecords() {
+		return this.records;
+	}
+
+	/**
+	 * Prints how many changes were written and how.
+	 */
+	public void showStats() {
+		System.out.println("Write-ahead log: " + getRecords() + " changes in " + commits + " commits, "
+				+ compactions + " snapshots");
+	}
+
+	/**
+	 * Writes every finished step and closes the log, keeping its files.
+	 *
+	 * @throws IOException if a step could not be written
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		// the worker is not interrupted, as that would close the channel under it
+		closed = true;
+		try {
+			worker.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		try {
+			endStep();
+			flush();
+		} finally {
+			channel.close();
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Appends a record to the buffer, growing it if it is full.
+	 *
+	 * @param kind  CELL, HEALTH or SCORE
+	 * @param x     X coordinate
+	 * @param y     Y coordinate
+	 * @param value new value
+	 */
+	private synchronized void append(byte kind, int x, int y, int value) {
+		if (failure != null) {
+			return;
+		}
+		if (buffer.remaining() < RECORD_BYTES) {
+			ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+			buffer.flip();
+			buffer = larger.put(buffer);
+		}
+		buffer.put(kind).putInt(x).putInt(y).putInt(value);
+		records++;
+		sinceCompaction++;
+	}
+
+	/**
+	 * Saves the land as the snapshot the log starts from and empties the log.
+	 * The snapshot replaces the old one before the log is emptied, and the
+	 * records hold new values, so a crash in between only replays changes
+	 * the snapshot already holds.
+	 */
+	private void compact() {
+		synchronized (writeLock) {
+			flush();
+			if (failure != null) {
+				return;
+			}
+			try {
+				land.saveSnapshot(snapshotFile);
+				channel.truncate(HEADER_BYTES);
+				channel.force(false);
+				channel.position(HEADER_BYTES);
+				compactions++;
+				synchronized (this) {
+					sinceCompaction = 0;
+				}
+			} catch (IOException e) {
+				failure = e;
+			}
+		}
+	}
+
+	/**
+	 * Loop of the commit thread, writing finished steps until close() is called.
+	 */
+	private void commitLoop() {
+		while (!closed) {
+			try {
+				Thread.sleep(commitMillis);
+			} catch (InterruptedException e) {
+				continue;
+			}
+			if (!closed) {
+				flush();
+			}
+		}
+	}
+
+	/**
+	 * Applies every whole frame of the log to the land and cuts off a frame
+	 * left half written by a crash.
+	 *
+	 * @return Number of changes replayed
+	 * @throws IOException if the log is not a write-ahead log or cannot be read
+	 */
+	private long replay() throws IOException {
+		long size = channel.size();
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+		if (size < HEADER_BYTES || channel.read(header, 0) < HEADER_BYTES || header.getInt(0) != MAGIC
+				|| header.getInt(4) != VERSION) {
+			throw new IOException("Write-ahead log is damaged, aborting mission.");
+		}
+		long replayed = 0;
+		long position = HEADER_BYTES;
+		while (position < size) {
+			MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+					Math.min(size - position, REPLAY_WINDOW));
+			int consumed = 0;
+			while (window.remaining() >= FRAME_HEADER_BYTES) {
+				int length = window.getInt(consumed);
+				if (length <= 0 || length % RECORD_BYTES != 0
+						|| length > window.limit() - consumed - FRAME_HEADER_BYTES) {
+					break;
+				}
+				ByteBuffer frame = window.slice(consumed + FRAME_HEADER_BYTES, length);
+				if (checksum(frame) != window.getInt(consumed + 4)) {
+					break;
+				}
+				replayed += apply(frame);
+				consumed += FRAME_HEADER_BYTES + length;
+				window.position(consumed);
+			}
+			if (consumed == 0) {
+				// the rest was never committed
+				break;
+			}
+			position += consumed;
+		}
+		if (position < size) {
+			channel.truncate(position);
+			channel.force(false);
+		}
+		return replayed;
+	}
+
+	/**
+	 * Applies the records of a frame to the land.
+	 *
+	 * @param frame records of one frame
+	 * @return Number of records applied
+	 */
+	private long apply(ByteBuffer frame) {
+		long applied = 0;
+		while (frame.hasRemaining()) {
+			byte kind = frame.get();
+			int x = frame.getInt();
+			int y = frame.getInt();
+			int value = frame.getInt();
+			switch (kind) {
+				case CELL:
+					land.replayCell(x, y, (char) value);
+					break;
+				case HEALTH:
+					land.replayHealth(x, y, value);
+					break;
+				default:
+					land.restoreBehaviorScore(value);
+					break;
+			}
+			applied++;
+		}
+		return applied;
+	}
+
+	/**
+	 * Computes the checksum of the remaining bytes of a buffer.
+	 *
+	 * @param buffer bytes to check, the position is not moved
+	 * @return CRC-32C of the bytes
+	 */
+	private static int checksum(ByteBuffer buffer) {
+		CRC32C crc = new CRC32C();
+		crc.update(buffer.duplicate());
+		return (int) crc.getValue();
+	}
+
+	private void writeFully(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer, position + buffer.position());
+		}
+	}
+}
@@ -33,6 +33,25 @@ public enum Entitys {
     Rock(new Terrain("ROCK", '@')),
     Mineral(new Terrain("MINERAL", '*'));
 
+    /** Symbol used for the map boundary */
+    public static final char BOUNDARY = '#';
+    /** Symbol used for an empty cell */
+    public static final char EMPTY = '.';
+
+    /** Lookup table from ASCII symbol to entity */
+    private static final Entitys[] BY_SYMBOL = new Entitys[128];
+    /** Lookup table of symbols allowed on the map */
+    private static final boolean[] MAP_SYMBOLS = new boolean[128];
+
+    static {
+        for (Entitys entitys : values()) {
+            BY_SYMBOL[entitys.getSymbol()] = entitys;
+            MAP_SYMBOLS[entitys.getSymbol()] = true;
+        }
+        MAP_SYMBOLS[BOUNDARY] = true;
+        MAP_SYMBOLS[EMPTY] = true;
+    }
+
     private final Entity entity;
 
     /**
@@ -89,4 +108,39 @@ public enum Entitys {
     public int getHealth() {
         return this.entity.getHealth();
     }
+
+    /**
+     * Gets the entity for a symbol.
+     *
+     * @param symbol Symbol to lookup
+     * @return Entitys for the symbol, null if no entity uses it
+     */
+    public static Entitys fromSymbol(char symbol) {
+        if (symbol >= BY_SYMBOL.length) {
+            return null;
+        }
+        return BY_SYMBOL[symbol];
+    }
+
+    /**
+     * Gets the ordinal of the entity for a symbol.
+     *
+     * @param symbol Symbol to lookup
+     * @return Ordinal of the entity, -1 if no entity uses it
+     */
+    public static int ordinalOf(char symbol) {
+        Entitys entitys = fromSymbol(symbol);
+        return entitys == null ? -1 : entitys.ordinal();
+    }
+
+    /**
+     * Checks if a symbol may appear on the map.
+     * This covers every entity plus the boundary and empty cells.
+     *
+     * @param symbol Symbol to check
+     * @return true if symbol is allowed, false otherwise
+     */
+    public static boolean isMapSymbol(char symbol) {
+        return symbol < MAP_SYMBOLS.length && MAP_SYMBOLS[symbol];
+    }
 }
\ No newline at end of file